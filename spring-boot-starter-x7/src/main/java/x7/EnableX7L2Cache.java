@@ -17,6 +17,8 @@
 package x7;
 
 import org.springframework.context.annotation.Import;
+import x7.repository.cache.CacheCodec;
+import x7.repository.cache.JsonCacheCodec;
 
 import java.lang.annotation.*;
 
@@ -28,4 +30,113 @@ public @interface EnableX7L2Cache {
 
     int timeSeconds() default 60;
 
+    /**
+     * 不存在的对象缓存多久
+     */
+    int nullTimeSeconds() default 10;
+
+    /**
+     * 进程内近端缓存的最大条数, 0: 不开启
+     */
+    int nearCacheSize() default 0;
+
+    int nearCacheWeightMB() default 64;
+
+    int nearCacheTimeSeconds() default 10;
+
+    /**
+     * 单节点一个窗口内读取同一个对象多少次算热点key, 热点对象在进程内保留短时副本<br>
+     * 0: 不开启
+     */
+    int hotKeyThreshold() default 0;
+
+    long hotKeyWindowMillis() default 1000;
+
+    /**
+     * 热点副本的过期时间, 失效消息丢失时的最大不一致时间
+     */
+    int hotKeyTimeSeconds() default 1;
+
+    int hotKeyMaxSize() default 1000;
+
+    /**
+     * 实体代数和查询命名空间保存在本地, 由失效消息更新<br>
+     * 消息丢失时的最大不一致时间: 最长多久回redis校验一次, 0: 每次校验
+     */
+    long namespaceStaleMillis() default 1000;
+
+    /**
+     * 缓存对象的编解码, 可选 BinaryCacheCodec<br>
+     * 所有节点须一致
+     */
+    Class<? extends CacheCodec> codec() default JsonCacheCodec.class;
+
+    /**
+     * 缓存未命中时, 跨节点回源租约的时长, 0: 只在本节点内合并回源
+     */
+    long leaseMillis() default 0;
+
+    /**
+     * 查询结果的依赖追踪, 写操作只让可能受影响的查询结果失效<br>
+     * false: 任何写都让整个类的查询结果失效
+     */
+    boolean dependencyTracking() default false;
+
+    /**
+     * 对象key的桶数, 同一个类的对象分散到多个Redis Cluster slot<br>
+     * 1: 同一个类的key在一个slot, 可以用lua脚本一次查出查询结果和对象<br>
+     * 所有节点须一致
+     */
+    int keyBuckets() default 1;
+
+    /**
+     * 批量读取时每次MGET的最大key数, 超过时拆分并行发送
+     */
+    int mgetChunkSize() default 500;
+
+    /**
+     * 批量写入时每个pipeline的最大命令数, 超过时拆分并行发送
+     */
+    int msetChunkSize() default 500;
+
+    /**
+     * redis单次调用的耗时预算, 读超过预算即放弃, 按未命中查库<br>
+     * 出错或超预算的调用过半时熔断, 读直接查库<br>
+     * 0: 不开启
+     */
+    long circuitBreakerBudgetMillis() default 0;
+
+    /**
+     * 熔断后探测redis是否恢复的间隔
+     */
+    long circuitBreakerOpenMillis() default 5000;
+
+    /**
+     * true: 使用进程内的LocalCacheResolver, 不依赖redis, 只适合单节点<br>
+     * 近端缓存, 租约, 依赖追踪等redis相关的配置不再生效
+     */
+    boolean local() default false;
+
+    /**
+     * 进程内缓存的最大条数
+     */
+    int localCacheSize() default 100000;
+
+    /**
+     * 内存映射文件缓存的目录, 对@X.Cache(offHeap = true)的实体类生效<br>
+     * 空: 不开启
+     */
+    String mappedCacheDir() default "";
+
+    /**
+     * 每个实体类的映射文件大小, 写满时清空
+     */
+    int mappedCacheSizeMB() default 256;
+
+    /**
+     * @X.Cache没有设置时间时, 映射文件里对象的过期时间<br>
+     * 也是失效消息丢失时, 本节点最长的不一致时间
+     */
+    int mappedCacheTimeSeconds() default 300;
+
 }
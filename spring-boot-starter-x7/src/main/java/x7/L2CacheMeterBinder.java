@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import x7.repository.cache.L2CacheMetrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 把L2CacheMetrics绑定到Micrometer, 有micrometer-core时才注册<br>
+ * 标签: clz, op<br>
+ * 热点key只导出个数, 升级和降级次数, key本身用L2CacheMetrics.getHotKeyList()查看<br>
+ */
+public class L2CacheMeterBinder implements MeterBinder {
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        L2CacheMetrics metrics = L2CacheMetrics.getInstance();
+        metrics.setListener(new L2CacheMetrics.Listener() {
+            @Override
+            public void onStats(L2CacheMetrics.Stats stats) {
+                bind(registry, stats);
+            }
+        });
+        for (L2CacheMetrics.Stats stats : metrics.getStatsList()) {
+            bind(registry, stats);
+        }
+
+        Gauge.builder("x7.l2cache.hotkeys", metrics, new ToDoubleFunction<L2CacheMetrics>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics m) {
+                return m.getHotKeyCount();
+            }
+        }).description("L2 cache hot keys with local copies").register(registry);
+        FunctionCounter.builder("x7.l2cache.hotkey.changes", metrics, new ToDoubleFunction<L2CacheMetrics>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics m) {
+                return m.getHotKeyPromotionCount();
+            }
+        }).tags(Tags.of("change", "promotion")).description("L2 cache hot key promotions and demotions").register(registry);
+        FunctionCounter.builder("x7.l2cache.hotkey.changes", metrics, new ToDoubleFunction<L2CacheMetrics>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics m) {
+                return m.getHotKeyDemotionCount();
+            }
+        }).tags(Tags.of("change", "demotion")).description("L2 cache hot key promotions and demotions").register(registry);
+    }
+
+    private void bind(MeterRegistry registry, L2CacheMetrics.Stats stats) {
+        Tags tags = Tags.of("clz", stats.getClzName(), "op", stats.getOp());
+
+        if (stats.getOp().startsWith("redis.")) {
+            FunctionTimer.builder("x7.l2cache.redis", stats, new ToLongFunction<L2CacheMetrics.Stats>() {
+                @Override
+                public long applyAsLong(L2CacheMetrics.Stats s) {
+                    return s.getRedisCount();
+                }
+            }, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+                @Override
+                public double applyAsDouble(L2CacheMetrics.Stats s) {
+                    return s.getRedisNanos();
+                }
+            }, TimeUnit.NANOSECONDS).tags(tags).description("L2 cache redis latency").register(registry);
+
+            long[] bounds = L2CacheMetrics.getLatencyBoundsMicros();
+            for (int i = 0; i < bounds.length; i++) {
+                final int index = i;
+                FunctionCounter.builder("x7.l2cache.redis.latency", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+                    @Override
+                    public double applyAsDouble(L2CacheMetrics.Stats s) {
+                        return s.getLatencyCount(index);
+                    }
+                }).tags(tags.and("le", String.valueOf(bounds[i] / 1000000.0))).description("L2 cache redis calls within le seconds").register(registry);
+            }
+
+            FunctionCounter.builder("x7.l2cache.payload", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+                @Override
+                public double applyAsDouble(L2CacheMetrics.Stats s) {
+                    return s.getBytes();
+                }
+            }).tags(tags).baseUnit("bytes").description("L2 cache payload bytes").register(registry);
+            return;
+        }
+
+        if (L2CacheMetrics.HOT_KEY.equals(stats.getOp())) {
+            FunctionCounter.builder("x7.l2cache.hotkey.hits", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+                @Override
+                public double applyAsDouble(L2CacheMetrics.Stats s) {
+                    return s.getHitCount();
+                }
+            }).tags(tags).description("L2 cache reads served by hot key local copies").register(registry);
+            return;
+        }
+
+        if (L2CacheMetrics.INVALIDATE.equals(stats.getOp())) {
+            FunctionCounter.builder("x7.l2cache.invalidations", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+                @Override
+                public double applyAsDouble(L2CacheMetrics.Stats s) {
+                    return s.getInvalidationCount();
+                }
+            }).tags(tags).description("L2 cache invalidations").register(registry);
+            return;
+        }
+
+        FunctionCounter.builder("x7.l2cache.requests", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics.Stats s) {
+                return s.getHitCount();
+            }
+        }).tags(tags.and("result", "hit")).description("L2 cache requests").register(registry);
+        FunctionCounter.builder("x7.l2cache.requests", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics.Stats s) {
+                return s.getMissCount();
+            }
+        }).tags(tags.and("result", "miss")).description("L2 cache requests").register(registry);
+        FunctionCounter.builder("x7.l2cache.requests", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics.Stats s) {
+                return s.getPartialHitCount();
+            }
+        }).tags(tags.and("result", "partial")).description("L2 cache requests").register(registry);
+        FunctionCounter.builder("x7.l2cache.rehydrations", stats, new ToDoubleFunction<L2CacheMetrics.Stats>() {
+            @Override
+            public double applyAsDouble(L2CacheMetrics.Stats s) {
+                return s.getRehydrationCount();
+            }
+        }).tags(tags).description("L2 cache objects reloaded from db for partial hits").register(registry);
+    }
+}
@@ -17,9 +17,19 @@
 package x7;
 
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.RootBeanDefinition;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
 import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ClassUtils;
+import x7.core.repository.CacheResolver;
 import x7.repository.SqlRepository;
+import x7.repository.cache.CacheCodec;
+import x7.repository.cache.CircuitBreaker;
+import x7.repository.cache.CircuitBreakerCacheResolver;
+import x7.repository.cache.JsonCacheCodec;
+import x7.repository.cache.LocalCacheResolver;
+import x7.repository.cache.MappedCacheResolver;
+import x7.repository.redis.JedisConnector_Cache;
 import x7.repository.redis.LevelTwoCacheResolver;
 
 import java.util.Map;
@@ -33,8 +43,88 @@ public class L2CacheStarter implements ImportBeanDefinitionRegistrar {
 
         Object obj = attributes.get("timeSeconds");
 
-        LevelTwoCacheResolver.getInstance().setValidSecond(Integer.valueOf(obj.toString()));
+        CacheCodec codec = null;
+        Class<? extends CacheCodec> codecClz = (Class<? extends CacheCodec>) attributes.get("codec");
+        if (codecClz != JsonCacheCodec.class) {
+            try {
+                codec = codecClz.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("L2 Cache codec can not be created: " + codecClz.getName(), e);
+            }
+        }
 
-        SqlRepository.getInstance().setCacheResolver(LevelTwoCacheResolver.getInstance());
+        CacheResolver cacheResolver;
+        if (Boolean.valueOf(attributes.get("local").toString())) {
+            LocalCacheResolver localCacheResolver = LocalCacheResolver.getInstance();
+            localCacheResolver.setValidSecond(Integer.valueOf(obj.toString()));
+            localCacheResolver.setNullValidSecond(Integer.valueOf(attributes.get("nullTimeSeconds").toString()));
+            localCacheResolver.setMaxSize(Integer.valueOf(attributes.get("localCacheSize").toString()));
+            cacheResolver = localCacheResolver;
+        } else {
+            LevelTwoCacheResolver.getInstance().setValidSecond(Integer.valueOf(obj.toString()));
+
+            LevelTwoCacheResolver.getInstance().setNullValidSecond(Integer.valueOf(attributes.get("nullTimeSeconds").toString()));
+
+            LevelTwoCacheResolver.getInstance().setNearCache(
+                    Integer.valueOf(attributes.get("nearCacheSize").toString()),
+                    Integer.valueOf(attributes.get("nearCacheWeightMB").toString()),
+                    Integer.valueOf(attributes.get("nearCacheTimeSeconds").toString())
+            );
+
+            LevelTwoCacheResolver.getInstance().setHotKey(
+                    Integer.valueOf(attributes.get("hotKeyThreshold").toString()),
+                    Long.valueOf(attributes.get("hotKeyWindowMillis").toString()),
+                    Integer.valueOf(attributes.get("hotKeyTimeSeconds").toString()),
+                    Integer.valueOf(attributes.get("hotKeyMaxSize").toString())
+            );
+
+            LevelTwoCacheResolver.getInstance().setNamespaceStaleMillis(Long.valueOf(attributes.get("namespaceStaleMillis").toString()));
+
+            if (codec != null)
+                LevelTwoCacheResolver.getInstance().setCodec(codec);
+
+            LevelTwoCacheResolver.getInstance().setDependencyTracking(Boolean.valueOf(attributes.get("dependencyTracking").toString()));
+
+            LevelTwoCacheResolver.getInstance().setKeyBuckets(Integer.valueOf(attributes.get("keyBuckets").toString()));
+
+            JedisConnector_Cache.setChunkSize(Integer.valueOf(attributes.get("mgetChunkSize").toString()),
+                    Integer.valueOf(attributes.get("msetChunkSize").toString()));
+
+            SqlRepository.getInstance().setLeaseMillis(Long.valueOf(attributes.get("leaseMillis").toString()));
+
+            cacheResolver = LevelTwoCacheResolver.getInstance();
+
+            long budgetMillis = Long.valueOf(attributes.get("circuitBreakerBudgetMillis").toString());
+            if (budgetMillis > 0) {
+                cacheResolver = new CircuitBreakerCacheResolver(cacheResolver, budgetMillis,
+                        Long.valueOf(attributes.get("circuitBreakerOpenMillis").toString()),
+                        new CircuitBreaker.Probe() {
+                            @Override
+                            public void probe() throws Exception {
+                                JedisConnector_Cache.getInstance().get("x7.L2.probe");
+                            }
+                        });
+            }
+        }
+
+        String mappedCacheDir = attributes.get("mappedCacheDir").toString();
+        if (!mappedCacheDir.isEmpty()) {
+            MappedCacheResolver mappedCacheResolver = new MappedCacheResolver(cacheResolver, mappedCacheDir,
+                    Integer.valueOf(attributes.get("mappedCacheSizeMB").toString()),
+                    Integer.valueOf(attributes.get("mappedCacheTimeSeconds").toString()));
+            if (codec != null)
+                mappedCacheResolver.setCodec(codec);
+            cacheResolver = mappedCacheResolver;
+        }
+
+        SqlRepository.getInstance().setCacheResolver(cacheResolver);
+
+        registerMeterBinder(beanDefinitionRegistry);
+    }
+
+    private void registerMeterBinder(BeanDefinitionRegistry beanDefinitionRegistry) {
+        if (ClassUtils.isPresent("io.micrometer.core.instrument.binder.MeterBinder", L2CacheStarter.class.getClassLoader())) {
+            beanDefinitionRegistry.registerBeanDefinition("l2CacheMeterBinder", new RootBeanDefinition(L2CacheMeterBinder.class));
+        }
     }
 }
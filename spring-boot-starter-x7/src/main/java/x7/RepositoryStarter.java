@@ -28,6 +28,7 @@ import x7.config.SpringHelper;
 import x7.core.config.ConfigAdapter;
 import x7.core.config.Configs;
 import x7.repository.RepositoryBooter;
+import x7.repository.dao.DaoImpl;
 
 import javax.sql.DataSource;
 import java.util.Objects;
@@ -135,6 +136,33 @@ public class RepositoryStarter  {
         RepositoryBooter.onDriver(driverClassName);
         RepositoryBooter.boot(dsW,dsR);
 
+        try {
+            Object batchSize = Configs.get("x7.repository.batch-size");
+            if (Objects.nonNull(batchSize))
+                DaoImpl.getInstance().setBatchSize(Integer.valueOf(batchSize.toString()));
+        }catch (Exception e){
+            logger.info("X7 Repository createBatch size: default, config key: x7.repository.batch-size");
+        }
+
+        try {
+            Object rows = Configs.get("x7.repository.batch-rows-per-statement");
+            if (Objects.nonNull(rows))
+                DaoImpl.getInstance().setMaxRowsPerStatement(Integer.valueOf(rows.toString()));
+            Object bytes = Configs.get("x7.repository.batch-statement-bytes");
+            if (Objects.nonNull(bytes))
+                DaoImpl.getInstance().setMaxStatementBytes(Long.valueOf(bytes.toString()));
+        }catch (Exception e){
+            logger.info("X7 Repository createBatch statement size: default, config key: x7.repository.batch-rows-per-statement, x7.repository.batch-statement-bytes");
+        }
+
+        try {
+            Object fetchSize = Configs.get("x7.repository.fetch-size");
+            if (Objects.nonNull(fetchSize))
+                DaoImpl.getInstance().setFetchSize(Integer.valueOf(fetchSize.toString()));
+        }catch (Exception e){
+            logger.info("X7 Repository stream fetch size: default, config key: x7.repository.fetch-size");
+        }
+
     }
 
 }
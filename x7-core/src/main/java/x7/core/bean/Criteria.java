@@ -18,6 +18,7 @@ package x7.core.bean;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import x7.core.util.BeanUtil;
+import x7.core.util.Murmur3Hasher;
 import x7.core.util.StringUtil;
 import x7.core.web.Direction;
 import x7.core.web.Paged;
@@ -53,9 +54,68 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 	private transient String countDistinct = "COUNT(*) count";
 	@JsonIgnore
 	private transient String customedResultKey = SqlScript.STAR;
+	@JsonIgnore
+	private transient String fingerprint;
 
 	public Criteria(){}
 
+	/**
+	 * 结构化的128位指纹, 用作查询缓存的key<br>
+	 * 第一次调用后缓存在实例上, 调用setter会清除<br>
+	 * 直接修改getListX()等返回的列表后, 需调用resetFingerprint()<br>
+	 */
+	public String fingerprint() {
+		String fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			Murmur3Hasher hasher = new Murmur3Hasher();
+			hash(hasher);
+			fingerprint = hasher.toHex();
+			this.fingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	public void resetFingerprint() {
+		this.fingerprint = null;
+	}
+
+	protected void hash(Murmur3Hasher hasher) {
+		hasher.putString(getClass().getSimpleName());
+		hasher.putString(clz == null ? null : clz.getName());
+		hasher.putBoolean(isScroll).putInt(page).putInt(rows);
+		hasher.putString(countDistinct);
+		if (sortList == null) {
+			hasher.putInt(-1);
+		} else {
+			hasher.putInt(sortList.size());
+			for (Sort sort : sortList) {
+				hasher.putString(sort.getOrderBy()).putObject(sort.getDirection());
+			}
+		}
+		hasher.putInt(fixedSortList.size());
+		for (KV kv : fixedSortList) {
+			hasher.putString(kv.k).putObject(kv.v);
+		}
+		hash(hasher, listX);
+		if (dataPermission == null) {
+			hasher.putInt(-1);
+		} else {
+			hasher.putString(dataPermission.getDataPermissionKey()).putObject(dataPermission.getDataPermissionValue());
+		}
+	}
+
+	private void hash(Murmur3Hasher hasher, List<X> listX) {
+		if (listX == null) {
+			hasher.putInt(-1);
+			return;
+		}
+		hasher.putInt(listX.size());
+		for (X x : listX) {
+			hasher.putObject(x.getConjunction()).putObject(x.getPredicate()).putString(x.getKey()).putObject(x.getValue());
+			hash(hasher, x.getSubList());
+		}
+	}
+
 	@Override
 	public List<Object> getValueList() {
 		return valueList;
@@ -72,6 +132,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setClz(Class<?> clz) {
 		this.clz = clz;
+		this.fingerprint = null;
 	}
 
 	public Parsed getParsed() {
@@ -88,6 +149,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setCountDistinct(String str){
 		this.countDistinct = str;
+		this.fingerprint = null;
 	}
 	public String getCountDistinct(){
 		return this.countDistinct;
@@ -108,6 +170,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setSortList(List<Sort> sortList) {
 		this.sortList = sortList;
+		this.fingerprint = null;
 	}
 
 	public void setCustomedResultKey(String str){
@@ -131,6 +194,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setFixedSortList(List<KV> fixedSortList) {
 		this.fixedSortList = fixedSortList;
+		this.fingerprint = null;
 	}
 
 	public boolean isScroll() {
@@ -139,6 +203,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setScroll(boolean isScroll) {
 		this.isScroll = isScroll;
+		this.fingerprint = null;
 	}
 
 	public int getPage() {
@@ -147,6 +212,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setPage(int page) {
 		this.page = page;
+		this.fingerprint = null;
 	}
 
 	public int getRows() {
@@ -155,6 +221,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setRows(int rows) {
 		this.rows = rows;
+		this.fingerprint = null;
 	}
 
 	@Override
@@ -164,6 +231,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 	
 	protected void add(X x) {
 		this.listX.add(x);
+		this.fingerprint = null;
 	}
 
 	public DataPermission getDataPermission() {
@@ -172,6 +240,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 	public void setDataPermission(DataPermission dataPermission) {
 		this.dataPermission = dataPermission;
+		this.fingerprint = null;
 	}
 
 	public boolean isFixedSort() {
@@ -184,6 +253,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 		this.page = paged.getPage();
 		this.rows = paged.getRows();
 		this.sortList = paged.getSortList();
+		this.fingerprint = null;
 	}
 
 	@Override
@@ -229,6 +299,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 		}
 
 		public void setGroupBy(String groupBy) {
+			resetFingerprint();
 			if (StringUtil.isNullOrEmpty(this.groupBy)){
 				this.groupBy = groupBy;
 				return;
@@ -240,10 +311,12 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setReduceList(List<Reduce> reduceList) {
 			this.reduceList = reduceList;
+			resetFingerprint();
 		}
 
 		public void setDistinct(Distinct distinct) {
 			this.distinct = distinct;
+			resetFingerprint();
 		}
 
 		public MapMapper getMapMapper() {
@@ -283,6 +356,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setSourceScript(String sourceScript) {
 			this.sourceScript = sourceScript;
+			resetFingerprint();
 		}
 		
 
@@ -290,8 +364,22 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 			return resultKeyList;
 		}
 
+		@Override
+		protected void hash(Murmur3Hasher hasher) {
+			super.hash(hasher);
+			hasher.putObject(resultKeyList).putString(sourceScript).putString(groupBy);
+			hasher.putObject(distinct == null ? null : distinct.getList());
+			hasher.putInt(reduceList == null ? -1 : reduceList.size());
+			if (reduceList != null) {
+				for (Reduce reduce : reduceList) {
+					hasher.putObject(reduce.getType()).putString(reduce.getProperty());
+				}
+			}
+		}
+
 		public void setResultKeyList(List<String> columnList) {
 			this.resultKeyList = columnList;
+			resetFingerprint();
 		}
 
 
@@ -438,6 +526,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setWithClz(Class withClz) {
 			this.withClz = withClz;
+			resetFingerprint();
 		}
 
 		public Class getRelativeClz() {
@@ -446,6 +535,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setRelativeClz(Class relativeClz) {
 			this.relativeClz = relativeClz;
+			resetFingerprint();
 		}
 
 		public String getMainPropperty() {
@@ -454,6 +544,7 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setMainPropperty(String mainPropperty) {
 			this.mainPropperty = mainPropperty;
+			resetFingerprint();
 		}
 
 		public String getWithProperty() {
@@ -462,14 +553,24 @@ public class Criteria implements CriteriaCondition, Paged, Serializable {
 
 		public void setWithProperty(String withProperty) {
 			this.withProperty = withProperty;
+			resetFingerprint();
 		}
 
 		public List<? extends  Object> getKnownMainIdList() {
 			return knownMainIdList;
 		}
 
+		@Override
+		protected void hash(Murmur3Hasher hasher) {
+			super.hash(hasher);
+			hasher.putString(withClz == null ? null : withClz.getName());
+			hasher.putString(relativeClz == null ? null : relativeClz.getName());
+			hasher.putString(mainPropperty).putString(withProperty).putObject(knownMainIdList);
+		}
+
 		public void setKnownMainIdList(List<? extends  Object> knownMainIdList) {
 			this.knownMainIdList = knownMainIdList;
+			resetFingerprint();
 		}
 
 		@Override
@@ -64,6 +64,7 @@ public class CriteriaBuilder {
                 if (subList != null) {
                     subList.add(x);
                     x.setParent(parent);
+                    this.criteria.resetFingerprint();
                 }
             } else {
                 this.criteria.add(x);
@@ -91,6 +92,7 @@ public class CriteriaBuilder {
                 if (subList != null) {
                     subList.add(x);
                     x.setParent(parent);
+                    this.criteria.resetFingerprint();
                 }
             } else {
                 this.criteria.add(x);
@@ -116,6 +118,7 @@ public class CriteriaBuilder {
             List<X> subList = parent.getSubList();
             if (subList != null) {
                 subList.add(x);
+                this.criteria.resetFingerprint();
             }
 
             this.conditionBuilder.under(parent);
@@ -149,6 +152,7 @@ public class CriteriaBuilder {
             if (Objects.nonNull(inList) && inList.size() > 0) {
                 KV kv = new KV(porperty, inList);
                 criteria.getFixedSortList().add(kv);
+                criteria.resetFingerprint();
             }
             return this;
         }
@@ -165,6 +169,7 @@ public class CriteriaBuilder {
             }
             Sort sort = new Sort(orderBy,direction);
             sortList.add(sort);
+            criteria.resetFingerprint();
             return this;
         }
     };
@@ -467,6 +472,7 @@ public class CriteriaBuilder {
             X xx = new X();//?
             subList.add(xx);//?
             xx.setParent(x);
+            criteria.resetFingerprint();
             conditionBuilder.under(xx);
 
             return conditionBuilder;
@@ -717,6 +723,7 @@ public class CriteriaBuilder {
             if (Objects.isNull(x.getConjunction()) && Objects.isNull(x.getPredicate()) && Objects.isNull(x.getKey()))
                 ite.remove();
         }
+        this.criteria.resetFingerprint();
         return this.criteria;
     }
 
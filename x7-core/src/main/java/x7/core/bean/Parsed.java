@@ -23,8 +23,10 @@ import x7.core.util.BeanUtilX;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 public class Parsed {	
@@ -37,6 +39,7 @@ public class Parsed {
 
 	private final Map<Integer,String> keyMap = new HashMap<Integer,String>();
 	private final Map<Integer,Field> keyFieldMap = new HashMap<Integer,Field>();
+	private final Set<String> uniqueKeySet = new HashSet<String>();
 	
 	private List<BeanElement> beanElementList;
 	
@@ -45,6 +48,15 @@ public class Parsed {
 	private Map<String,String> mapperPropertyMap = new HashMap<String,String>();
 	
 	private boolean isNoCache;
+
+	private int cacheTimeSeconds;
+	private int cacheJitterSeconds;
+	private int cacheRefreshAheadSeconds;
+	private boolean isCacheOffHeap;
+
+	private int bloomExpectedSize;
+	private double bloomFpp;
+	private int bloomRebuildMinutes;
 	
 	private List<String> keywordsList = new ArrayList<String>();
 	
@@ -143,6 +155,73 @@ public class Parsed {
 		this.isNoCache = isNoCache;
 	}
 
+	public int getCacheTimeSeconds() {
+		return cacheTimeSeconds;
+	}
+
+	public void setCacheTimeSeconds(int cacheTimeSeconds) {
+		this.cacheTimeSeconds = cacheTimeSeconds;
+	}
+
+	public int getCacheJitterSeconds() {
+		return cacheJitterSeconds;
+	}
+
+	public void setCacheJitterSeconds(int cacheJitterSeconds) {
+		this.cacheJitterSeconds = cacheJitterSeconds;
+	}
+
+	public int getCacheRefreshAheadSeconds() {
+		return cacheRefreshAheadSeconds;
+	}
+
+	public void setCacheRefreshAheadSeconds(int cacheRefreshAheadSeconds) {
+		this.cacheRefreshAheadSeconds = cacheRefreshAheadSeconds;
+	}
+
+	public boolean isCacheOffHeap() {
+		return isCacheOffHeap;
+	}
+
+	public void setCacheOffHeap(boolean isCacheOffHeap) {
+		this.isCacheOffHeap = isCacheOffHeap;
+	}
+
+	/**
+	 * @X.Unique的属性
+	 */
+	public Set<String> getUniqueKeySet() {
+		return uniqueKeySet;
+	}
+
+	public boolean isBloomFilter() {
+		return bloomExpectedSize > 0;
+	}
+
+	public int getBloomExpectedSize() {
+		return bloomExpectedSize;
+	}
+
+	public void setBloomExpectedSize(int bloomExpectedSize) {
+		this.bloomExpectedSize = bloomExpectedSize;
+	}
+
+	public double getBloomFpp() {
+		return bloomFpp;
+	}
+
+	public void setBloomFpp(double bloomFpp) {
+		this.bloomFpp = bloomFpp;
+	}
+
+	public int getBloomRebuildMinutes() {
+		return bloomRebuildMinutes;
+	}
+
+	public void setBloomRebuildMinutes(int bloomRebuildMinutes) {
+		this.bloomRebuildMinutes = bloomRebuildMinutes;
+	}
+
 	public List<String> getKeywordsList() {
 		return keywordsList;
 	}
@@ -16,12 +16,16 @@
  */
 package x7.core.repository;
 
+import x7.core.bean.Criteria;
 import x7.core.util.JsonX;
 import x7.core.web.Page;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 /**
  * 
@@ -38,11 +42,62 @@ public interface CacheResolver {
 	 */
 	@SuppressWarnings("rawtypes")
 	String markForRefresh(Class clz);
+
+	/**
+	 * 是否开启查询结果的依赖追踪<br>
+	 * 开启后, 写操作只让可能受影响的查询结果失效
+	 */
+	default boolean isDependencyTracking(){
+		return false;
+	}
+
+	/**
+	 * 新增对象后, 让可能匹配它的查询结果失效
+	 */
+	@SuppressWarnings("rawtypes")
+	default void markForCreate(Class clz, Object obj){
+		markForRefresh(clz);
+	}
+
+	/**
+	 * 更新对象后, 让条件或排序用到被更新属性的查询结果失效
+	 * @param propertyList 被更新的属性
+	 */
+	@SuppressWarnings("rawtypes")
+	default void markForRefresh(Class clz, Collection<String> propertyList){
+		markForRefresh(clz);
+	}
+
+	/**
+	 * 删除对象后, 让含有它的查询结果和分页结果失效
+	 */
+	@SuppressWarnings("rawtypes")
+	default void markForRemove(Class clz, String key){
+		markForRefresh(clz);
+	}
+
+	/**
+	 * 批量删除对象后, 一次让含有它们的查询结果和分页结果失效
+	 */
+	@SuppressWarnings("rawtypes")
+	default void markForRemove(Class clz, List<String> keyList){
+		markForRefresh(clz);
+	}
 	
 	void remove(Class clz, String key);
 
 	void remove(Class clz);
 
+	/**
+	 * 批量删除对象缓存, 实现类可以合并成一次往返
+	 */
+	@SuppressWarnings("rawtypes")
+	default void remove(Class clz, List<String> keyList){
+		for (String key : keyList) {
+			remove(clz, key);
+		}
+	}
+
 	
 	/**
 	 * 高效的缓存单个对象<br>
@@ -52,6 +107,17 @@ public interface CacheResolver {
 	 */
 	@SuppressWarnings("rawtypes")
 	void set(Class clz, String key, Object obj);
+
+	/**
+	 * 批量缓存对象
+	 * @param objMap key: 对象的key
+	 */
+	@SuppressWarnings("rawtypes")
+	default void set(Class clz, Map<String, ? extends Object> objMap){
+		for (Map.Entry<String, ? extends Object> entry : objMap.entrySet()){
+			set(clz, entry.getKey(), entry.getValue());
+		}
+	}
 	
 	/**
 	 * 获取高效的缓存单个对象<br>
@@ -59,6 +125,29 @@ public interface CacheResolver {
 	 * @param key
 	 */
 	<T> T get(Class<T> clz, String key);
+	/**
+	 * 与get相同, 但区分未命中与缓存的空值<br>
+	 * set(clz, key, null)缓存空值, 使用较短的过期时间<br>
+	 * @param clz
+	 * @param key
+	 * @return null: 未命中; Optional.empty(): 缓存了空值, 对象不存在
+	 */
+	default <T> Optional<T> getNullable(Class<T> clz, String key) {
+		T t = get(clz, key);
+		return t == null ? null : Optional.of(t);
+	}
+
+	/**
+	 * 与getNullable相同, 剩余存活时间少于refreshAheadSeconds时, 异步执行reloader, 提前刷新缓存<br>
+	 * @param clz
+	 * @param key
+	 * @param refreshAheadSeconds 0: 不提前刷新
+	 * @param reloader 回源并set缓存
+	 */
+	default <T> Optional<T> getNullable(Class<T> clz, String key, int refreshAheadSeconds, Runnable reloader) {
+		return getNullable(clz, key);
+	}
+
 	/**
 	 * 高效的缓存Key列表
 	 * @param clz
@@ -101,10 +190,157 @@ public interface CacheResolver {
 	 * 高效从缓存中查出符合条件的所以对象
 	 * @param clz
 	 * @param keyList 
+	 * @return null: 缓存不可用, 需要查库
 	 */
 	@SuppressWarnings("rawtypes")
 	<T> List<T> list(Class<T> clz, List<String> keyList);
 	
+	/**
+	 * 查出结果Key列表, 及缓存中对应的对象<br>
+	 * 实现类可以合并成一次往返<br>
+	 * 返回null表示结果Key列表不在缓存中, 需要查库<br>
+	 * @param clz
+	 * @param conditionObj
+	 * @param keyList 输出参数, 结果Key列表
+	 * @return 缓存中找到的对象, 数量可能少于keyList
+	 */
+	default <T> List<T> listByResultKey(Class<T> clz, Object conditionObj, List<String> keyList){
+		List<String> resultKeyList = getResultKeyList(clz, conditionObj);
+		if (resultKeyList == null || resultKeyList.isEmpty())
+			return null;
+		List<T> list = list(clz, resultKeyList);
+		if (list == null)
+			return null;
+		keyList.addAll(resultKeyList);
+		return list;
+	}
+
+	/**
+	 * 查出缓存的分页, 及缓存中对应的对象<br>
+	 * 返回null表示需要查库<br>
+	 * @param clz
+	 * @param conditionObj
+	 * @return page, list里的对象数量可能少于keyList
+	 */
+	default <T> Page<T> findByResultKey(Class<T> clz, Object conditionObj){
+		Page<T> p = getResultKeyListPaginated(clz, conditionObj);
+		if (p == null)
+			return null;
+		List<String> keyList = p.getKeyList();
+		if (keyList == null || keyList.isEmpty()) {
+			p.reSetList(new ArrayList<T>());
+			return p;
+		}
+		List<T> list = list(clz, keyList);
+		if (list == null)
+			return null;
+		p.reSetList(list);
+		return p;
+	}
+
+	/**
+	 * 跨节点的短时租约, 缓存未命中时, 同一时刻只有一个节点回源<br>
+	 * @param clz
+	 * @param conditionObj
+	 * @param millis 租约时长
+	 * @return true: 获得租约, 或不支持租约
+	 */
+	@SuppressWarnings("rawtypes")
+	default boolean tryLease(Class clz, Object conditionObj, long millis){
+		return true;
+	}
+
+	@SuppressWarnings("rawtypes")
+	default void releaseLease(Class clz, Object conditionObj){
+	}
+
+	interface KeyListener {
+		void onKey(String clzName, String key);
+
+		/**
+		 * 有消息丢失, 期间新建的key可能没有收到
+		 */
+		default void onGap(){
+		}
+	}
+
+	/**
+	 * 通知其他节点新建了对象的key
+	 */
+	@SuppressWarnings("rawtypes")
+	default void publishKey(Class clz, String key){
+	}
+
+	/**
+	 * 接收其他节点新建的key
+	 * @return false: 不支持跨节点通知
+	 */
+	default boolean subscribeKey(KeyListener listener){
+		return false;
+	}
+
+	interface InvalidationListener {
+		/**
+		 * 其他节点删除了对象
+		 */
+		void onRemove(String clzName, String key);
+
+		/**
+		 * 其他节点清除或刷新了一个类
+		 */
+		void onClear(String clzName);
+
+		/**
+		 * 有消息丢失
+		 */
+		default void onGap(){
+		}
+	}
+
+	/**
+	 * 接收其他节点的失效通知, 用于本节点的其他缓存层
+	 * @return false: 不支持跨节点通知
+	 */
+	default boolean subscribeInvalidation(InvalidationListener listener){
+		return false;
+	}
+
+	/**
+	 * 缓存唯一键到主键的映射, 与对象同样按代数(generation)失效<br>
+	 * @param uniqueKey property.value
+	 * @param key 对象的key
+	 */
+	@SuppressWarnings("rawtypes")
+	default void setUniqueKey(Class clz, String uniqueKey, String key){
+	}
+
+	/**
+	 * @return null: 未命中, 或不支持
+	 */
+	@SuppressWarnings("rawtypes")
+	default String getUniqueKey(Class clz, String uniqueKey){
+		return null;
+	}
+
+	/**
+	 * 缓存ResultMapped查询或reduce的结果<br>
+	 * 依赖的任一类markForRefresh后, 不再命中<br>
+	 * @param clzList 结果依赖的类, 第一个为主类
+	 * @param condition 条件的指纹
+	 * @param value 编码后的结果
+	 */
+	@SuppressWarnings("rawtypes")
+	default void setResultMapped(List<Class> clzList, String condition, byte[] value){
+	}
+
+	/**
+	 * @return null: 未命中, 或不支持
+	 */
+	@SuppressWarnings("rawtypes")
+	default byte[] getResultMapped(List<Class> clzList, String condition){
+		return null;
+	}
+
 	void setMapList(Class clz, String key, List<Map<String,Object>> mapList);
 	
 	List<Map<String,Object>> getMapList(Class clz, String key);
@@ -112,6 +348,8 @@ public interface CacheResolver {
 	default String createCondition(Object obj){
 		if (Objects.isNull(obj))
 			return "null";
+		if (obj instanceof Criteria)
+			return ((Criteria) obj).fingerprint();
 		return JsonX.toJson(obj);
 	}
 }
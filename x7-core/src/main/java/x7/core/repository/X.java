@@ -62,6 +62,37 @@ public @interface X {
 	@Target({ElementType.TYPE})
 	@interface NoCache{
 	}
+
+	/**
+	 * 
+	 * cache policy of the entity<br>
+	 * timeSeconds: 0, the global time of L2 cache<br>
+	 * jitterSeconds: random seconds added to the time, to avoid mass expirations<br>
+	 * refreshAheadSeconds: get(clz, id) reloads the key in background, when it expires in seconds<br>
+	 * offHeap: keep the objects in the memory-mapped file tier too, if the tier is enabled<br>
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ElementType.TYPE})
+	@interface Cache{
+		int timeSeconds() default 0;
+		int jitterSeconds() default 0;
+		int refreshAheadSeconds() default 0;
+		boolean offHeap() default false;
+	}
+
+	/**
+	 * 
+	 * local bloom filter of existing keys<br>
+	 * get(clz, id) returns null without DB query for the id which can not exist and is not in cache<br>
+	 * the created keys are broadcast by redis pub/sub, rebuilt at once if any broadcast lost<br>
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ElementType.TYPE})
+	@interface BloomFilter{
+		int expectedSize() default 1000000;
+		double fpp() default 0.01;
+		int rebuildMinutes() default 10;
+	}
 	
 	/**
 	 * 
@@ -81,4 +112,15 @@ public @interface X {
 	@interface Key{
 	}
 
+	/**
+	 * 
+	 * unique key besides the primary key, like username or order number<br>
+	 * getOne(obj) with only this property set caches the mapping to the primary key,<br>
+	 * the object itself is read from the cache of get(clz, id)<br>
+	 */
+	@Retention(RetentionPolicy.RUNTIME)
+	@Target({ElementType.FIELD})
+	@interface Unique{
+	}
+
 }
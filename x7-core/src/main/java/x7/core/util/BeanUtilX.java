@@ -228,6 +228,21 @@ public class BeanUtilX extends BeanUtil {
 		if (p != null) {
 			parsed.setNoCache(true);
 		}
+
+		X.Cache cache = (X.Cache) clz.getAnnotation(X.Cache.class);
+		if (cache != null) {
+			parsed.setCacheTimeSeconds(cache.timeSeconds());
+			parsed.setCacheJitterSeconds(cache.jitterSeconds());
+			parsed.setCacheRefreshAheadSeconds(cache.refreshAheadSeconds());
+			parsed.setCacheOffHeap(cache.offHeap());
+		}
+
+		X.BloomFilter bloomFilter = (X.BloomFilter) clz.getAnnotation(X.BloomFilter.class);
+		if (bloomFilter != null) {
+			parsed.setBloomExpectedSize(bloomFilter.expectedSize());
+			parsed.setBloomFpp(bloomFilter.fpp());
+			parsed.setBloomRebuildMinutes(bloomFilter.rebuildMinutes());
+		}
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
@@ -290,6 +305,9 @@ public class BeanUtilX extends BeanUtil {
 				f.setAccessible(true);
 				keyFieldMap.put(X.KEY_ONE, f);
 			}
+			if (f.getAnnotation(X.Unique.class) != null){
+				parsed.getUniqueKeySet().add(f.getName());
+			}
 
 		}
 	}
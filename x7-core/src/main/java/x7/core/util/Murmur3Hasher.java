@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.core.util;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 
+ * MurmurHash3 x64 128位, 流式输入<br>
+ * 非加密, 用于缓存key的指纹<br>
+ * @author sim
+ *
+ */
+public class Murmur3Hasher {
+
+	private final static long C1 = 0x87c37b91114253d5L;
+	private final static long C2 = 0x4cf5ad432745937fL;
+
+	private final static char[] HEX = "0123456789abcdef".toCharArray();
+
+	private long h1;
+	private long h2;
+	private long pending;
+	private boolean hasPending;
+	private long length;
+
+	public Murmur3Hasher putLong(long value) {
+		this.length += 8;
+		if (!this.hasPending) {
+			this.pending = value;
+			this.hasPending = true;
+			return this;
+		}
+		this.hasPending = false;
+		mix(this.pending, value);
+		return this;
+	}
+
+	public Murmur3Hasher putInt(int value) {
+		return putLong(value);
+	}
+
+	public Murmur3Hasher putBoolean(boolean value) {
+		return putLong(value ? 1 : 0);
+	}
+
+	public Murmur3Hasher putString(String str) {
+		if (str == null)
+			return putLong(-1);
+		int size = str.length();
+		putLong(size);
+		int i = 0;
+		for (; i + 4 <= size; i += 4) {
+			putLong((long) str.charAt(i)
+					| (long) str.charAt(i + 1) << 16
+					| (long) str.charAt(i + 2) << 32
+					| (long) str.charAt(i + 3) << 48);
+		}
+		if (i < size) {
+			long value = 0;
+			for (int shift = 0; i < size; i++, shift += 16) {
+				value |= (long) str.charAt(i) << shift;
+			}
+			putLong(value);
+		}
+		return this;
+	}
+
+	/**
+	 * 带类型标记, 1 与 "1" 不同
+	 */
+	public Murmur3Hasher putObject(Object obj) {
+		if (obj == null)
+			return putLong(0);
+		if (obj instanceof String)
+			return putLong(1).putString((String) obj);
+		if (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte)
+			return putLong(2).putLong(((Number) obj).longValue());
+		if (obj instanceof Double || obj instanceof Float)
+			return putLong(3).putLong(Double.doubleToLongBits(((Number) obj).doubleValue()));
+		if (obj instanceof Boolean)
+			return putLong(4).putBoolean((Boolean) obj);
+		if (obj instanceof Date)
+			return putLong(5).putLong(((Date) obj).getTime());
+		if (obj instanceof Enum)
+			return putLong(6).putString(((Enum) obj).name());
+		if (obj instanceof Collection) {
+			Collection collection = (Collection) obj;
+			putLong(7).putLong(collection.size());
+			for (Object o : collection) {
+				putObject(o);
+			}
+			return this;
+		}
+		if (obj instanceof Object[]) {
+			Object[] arr = (Object[]) obj;
+			putLong(8).putLong(arr.length);
+			for (Object o : arr) {
+				putObject(o);
+			}
+			return this;
+		}
+		if (obj instanceof Map) {
+			return putLong(9).putString(JsonX.toJson((Map) obj));
+		}
+		return putLong(10).putString(obj.getClass().getName()).putString(obj.toString());
+	}
+
+	private void mix(long k1, long k2) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		k1 *= C2;
+		this.h1 ^= k1;
+
+		this.h1 = Long.rotateLeft(this.h1, 27);
+		this.h1 += this.h2;
+		this.h1 = this.h1 * 5 + 0x52dce729;
+
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		k2 *= C1;
+		this.h2 ^= k2;
+
+		this.h2 = Long.rotateLeft(this.h2, 31);
+		this.h2 += this.h1;
+		this.h2 = this.h2 * 5 + 0x38495ab5;
+	}
+
+	/**
+	 * 32位十六进制字符串
+	 */
+	public String toHex() {
+		long h1 = this.h1;
+		long h2 = this.h2;
+		if (this.hasPending) {
+			long k1 = this.pending;
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= C2;
+			h1 ^= k1;
+		}
+
+		h1 ^= this.length;
+		h2 ^= this.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		char[] chars = new char[32];
+		for (int i = 0; i < 16; i++) {
+			chars[i] = HEX[(int) (h1 >>> (60 - i * 4)) & 0xF];
+			chars[i + 16] = HEX[(int) (h2 >>> (60 - i * 4)) & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -26,6 +26,8 @@ import x7.core.web.Page;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * 
@@ -57,6 +59,17 @@ public interface BaseRepository<T> {
 	 */
 	void remove(T obj);
 
+	/**
+	 * 批量更新, 每个对象都要有主键
+	 * @return 与objList一一对应, true: 更新了行
+	 */
+	boolean[] refreshBatch(List<T> objList);
+
+	/**
+	 * @return 与objList一一对应, true: 删除了行
+	 */
+	boolean[] removeBatch(List<T> objList);
+
 	/**
 	 *
 	 * @param idOne
@@ -117,5 +130,13 @@ public interface BaseRepository<T> {
 
 	List<T> list(Criteria criteria);
 
+	/**
+	 * 大结果集逐行读取, 内存不随结果增长<br>
+	 * 用完必须close, 建议try-with-resources
+	 */
+	Stream<T> stream(Criteria criteria);
+
+	void forEach(Criteria criteria, Consumer<T> consumer);
+
 	<WITH> List<DomainObject<T,WITH>>  listDomainObject(Criteria.DomainObjectCriteria domainObjectCriteria);
 }
\ No newline at end of file
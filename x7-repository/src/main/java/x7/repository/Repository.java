@@ -25,6 +25,8 @@ import x7.core.web.Page;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 /**
@@ -69,6 +71,18 @@ public interface Repository {
 	 */
 	boolean remove(Object obj);
 
+	/**
+	 * 批量更新, 一个连接, 缓存一次失效
+	 * @return 与objList一一对应, true: 更新了行
+	 */
+	boolean[] refreshBatch(List<? extends Object> objList);
+
+	/**
+	 * 批量删除, 一个连接, 缓存一次失效
+	 * @return 与objList一一对应, true: 删除了行
+	 */
+	boolean[] removeBatch(List<? extends Object> objList);
+
 	
 	/**
 	 * 根据主键查出单条
@@ -150,5 +164,17 @@ public interface Repository {
 
 	<T> List<T> list(Criteria criteria);
 
+	/**
+	 * 流式查询, 逐行映射, 不经过缓存<br>
+	 * 用完必须close, 建议try-with-resources, close时归还连接<br>
+	 * 读完前连接被占用, 不要在消费时用同一个连接查询
+	 */
+	<T> Stream<T> stream(Criteria criteria);
+
+	/**
+	 * stream(criteria)逐行消费, 结束或异常时归还连接
+	 */
+	<T> void forEach(Criteria criteria, Consumer<T> consumer);
+
 	boolean createBatch(List<? extends Object> objList);
 }
\ No newline at end of file
@@ -26,14 +26,24 @@ import x7.core.bean.condition.RefreshCondition;
 import x7.core.config.Configs;
 import x7.core.repository.CacheResolver;
 import x7.core.repository.X;
+import x7.core.util.BeanUtilX;
 import x7.core.util.JsonX;
+import x7.core.util.VerifyUtil;
 import x7.core.web.Direction;
 import x7.core.web.Page;
+import x7.repository.cache.KeyBloomFilters;
+import x7.repository.cache.L2CacheMetrics;
+import x7.repository.cache.ResultMappedCodec;
+import x7.repository.cache.ResultMappedDependency;
+import x7.repository.cache.SingleFlight;
 import x7.repository.dao.Dao;
+import x7.repository.exception.CreateBatchException;
 import x7.repository.exception.PersistenceException;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * @author Sim
@@ -65,6 +75,83 @@ public class SqlRepository implements Repository {
         this.cacheResolver = cacheResolver;
     }
 
+    private volatile KeyBloomFilters bloomFilters;
+    private volatile boolean isBloomFilterChecked;
+
+    /**
+     * 跨节点同步新建的key可用时, 才开启布隆过滤器
+     */
+    private KeyBloomFilters getBloomFilters() {
+        if (this.isBloomFilterChecked)
+            return this.bloomFilters;
+        synchronized (this) {
+            if (this.isBloomFilterChecked)
+                return this.bloomFilters;
+            final KeyBloomFilters filters = new KeyBloomFilters(new KeyBloomFilters.KeyScanner() {
+                @Override
+                public List<String> scan(Class clz, String lastKey, int rows) {
+                    return scanKeys(clz, lastKey, rows);
+                }
+            });
+            boolean flag = cacheResolver.subscribeKey(new CacheResolver.KeyListener() {
+                @Override
+                public void onKey(String clzName, String key) {
+                    try {
+                        filters.put(Class.forName(clzName), key);
+                    } catch (ClassNotFoundException e) {
+                    }
+                }
+
+                @Override
+                public void onGap() {
+                    filters.reset();
+                }
+            });
+            if (flag) {
+                this.bloomFilters = filters;
+            } else {
+                logger.warn("X7 Repository bloom filter disabled, the created keys can not be broadcast");
+            }
+            this.isBloomFilterChecked = true;
+        }
+        return this.bloomFilters;
+    }
+
+    /**
+     * 只查key列
+     */
+    private List<String> scanKeys(Class clz, String lastKey, int rows) {
+        Parsed parsed = Parser.get(clz);
+        String keyProperty = parsed.getKey(X.KEY_ONE);
+        CriteriaBuilder.ResultMappedBuilder builder = CriteriaBuilder.buildResultMapped(clz);
+        builder.resultKey(keyProperty);
+        if (lastKey != null) {
+            Object last = parsed.getKeyField(X.KEY_ONE).getType() == String.class ? lastKey : Long.valueOf(lastKey);
+            builder.and().gt(keyProperty, last);
+        }
+        builder.paged().scroll(true).rows(rows).page(1).sort(keyProperty, Direction.ASC);
+
+        Page<Map<String, Object>> p = syncDao.find(builder.get());
+        List<String> keyList = new ArrayList<String>();
+        for (Map<String, Object> map : p.getList()) {
+            Object key = map.get(keyProperty);
+            if (key != null)
+                keyList.add(String.valueOf(key));
+        }
+        return keyList;
+    }
+
+    private final SingleFlight singleFlight = new SingleFlight(3000);
+    private final L2CacheMetrics metrics = L2CacheMetrics.getInstance();
+    private long leaseMillis;
+
+    /**
+     * 缓存未命中时, 跨节点租约的时长, 0: 只在本节点内合并回源
+     */
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
     private boolean isNoCache() {
         return Configs.Inner.isDev || cacheResolver == null;
     }
@@ -72,8 +159,11 @@ public class SqlRepository implements Repository {
     private String getCacheKey(Object obj, Parsed parsed) {
         try {
 
-            Field field = obj.getClass().getDeclaredField(parsed.getKey(X.KEY_ONE));
-            field.setAccessible(true);
+            Field field = parsed.getKeyField(X.KEY_ONE);
+            if (field == null) {
+                field = obj.getClass().getDeclaredField(parsed.getKey(X.KEY_ONE));
+                field.setAccessible(true);
+            }
             String keyOne = field.get(obj).toString();
             return keyOne;
 
@@ -83,6 +173,17 @@ public class SqlRepository implements Repository {
         return null;
     }
 
+    private Object toKeyValue(String key, Class keyType) {
+        if (keyType == String.class)
+            return key;
+        if (keyType == int.class || keyType == Integer.class)
+            return Integer.valueOf(key);
+        return Long.valueOf(key);
+    }
+
+    /**
+     * 缓存中缺失的对象, 分段用一条IN查询补齐, 再批量写回缓存
+     */
     private <T> void replenishAndRefreshCache(List<String> keyList, List<T> list, Class<T> clz, Parsed parsed) {
 
         Set<String> keySet = new HashSet<String>();
@@ -91,63 +192,192 @@ public class SqlRepository implements Repository {
             keySet.add(key);
         }
 
+        Set<String> missedKeySet = new LinkedHashSet<>();
         for (String key : keyList) {
             if (!keySet.contains(key)) {
+                missedKeySet.add(key);
+            }
+        }
+        if (missedKeySet.isEmpty())
+            return;
+        List<String> missedKeyList = new ArrayList<>(missedKeySet);
+
+        String keyProperty = parsed.getKey(X.KEY_ONE);
+        Class keyType = parsed.getKeyField(X.KEY_ONE).getType();
+        Map<String, Object> objMap = new LinkedHashMap<>();
+        int size = missedKeyList.size();
+        for (int fromIndex = 0; fromIndex < size; fromIndex += IN_MAX) {
+            List<Object> inList = new ArrayList<>();
+            for (String key : missedKeyList.subList(fromIndex, Math.min(fromIndex + IN_MAX, size))) {
+                inList.add(toKeyValue(key, keyType));
+            }
+            InCondition inCondition = new InCondition(keyProperty, inList);
+            inCondition.setClz(clz);
+            List<T> tempList = syncDao.in(inCondition);
+            for (T t : tempList) {
+                objMap.put(getCacheKey(t, parsed), t);
+            }
+        }
 
-                T obj = null;
+        for (Object obj : objMap.values()) {
+            list.add((T) obj);
+        }
 
-                Field f = parsed.getKeyField(X.KEY_ONE);
-                if (f.getType() == String.class) {
-                    T condition = null;
-                    try {
-                        condition = clz.newInstance();
-                        f.set(condition, key);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+        /*
+         * 更新或重置缓存
+         */
+        if (isNoCache() || parsed.isNoCache())
+            return;
 
-                    List<T> tempList = null;
-                    tempList = syncDao.list(condition);
+        if (!objMap.isEmpty())
+            cacheResolver.set(clz, objMap);
 
-                    if (!tempList.isEmpty()) {
-                        obj = tempList.get(0);
-                    }
+        if (objMap.size() < size) {
+            if (!cacheResolver.isDependencyTracking()) {
+                cacheResolver.markForRefresh(clz);
+                return;
+            }
+            for (String key : missedKeyList) {
+                if (!objMap.containsKey(key))
+                    cacheResolver.markForRemove(clz, key);
+            }
+        }
+    }
+
+    private <T> List<T> sort(List<String> keyList, List<T> list, Parsed parsed) {
+        Map<String, T> map = new HashMap<>();
+        for (T t : list) {
+            map.put(getCacheKey(t, parsed), t);
+        }
+        List<T> sortedList = new ArrayList<T>(keyList.size());
+        for (String key : keyList) {
+            T t = map.remove(key);
+            if (t != null)
+                sortedList.add(t);
+        }
+        return sortedList;
+    }
 
-                } else {
-                    long idOne = Long.valueOf(key);
-                    obj = syncDao.get(clz, idOne);
+    /**
+     * 缓存未命中时回源<br>
+     * 本节点内同一条件只有一个线程查库, 其他线程等它写完缓存后重读<br>
+     * 开启租约时, 没拿到租约的节点先等待其他节点写缓存<br>
+     */
+    private <T> T loadOnMiss(final Class clz, final Object condition, final SingleFlight.Loader<T> cacheReader, final SingleFlight.Loader<T> dbLoader, SingleFlight.Follower<T> follower) {
+
+        String flightKey = clz.getName() + ":" + cacheResolver.createCondition(condition);
+
+        return singleFlight.execute(flightKey, new SingleFlight.Loader<T>() {
+            @Override
+            public T load() {
+                if (leaseMillis <= 0)
+                    return dbLoader.load();
+
+                if (cacheResolver.tryLease(clz, condition, leaseMillis)) {
+                    try {
+                        return dbLoader.load();
+                    } finally {
+                        cacheResolver.releaseLease(clz, condition);
+                    }
                 }
 
-                /*
-                 * 更新或重置缓存
-                 */
-                if (obj == null) {
-                    if (!isNoCache() && !parsed.isNoCache())
-                        cacheResolver.markForRefresh(clz);
-                } else {
-                    list.add(obj);
-                    if (!isNoCache() && !parsed.isNoCache())
-                        cacheResolver.set(clz, key, obj);
+                long deadline = System.currentTimeMillis() + leaseMillis;
+                while (System.currentTimeMillis() < deadline) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    T t = cacheReader.load();
+                    if (t != null)
+                        return t;
                 }
+                return dbLoader.load();
             }
+        }, follower);
+    }
+
+    /**
+     * leader的结果为空时直接返回, 否则重读缓存, 避免多个线程共享同一个对象
+     */
+    private <T> SingleFlight.Follower<T> reread(final SingleFlight.Loader<T> cacheReader, final SingleFlight.Loader<T> dbLoader) {
+        return new SingleFlight.Follower<T>() {
+            @Override
+            public T follow(T leaderValue) {
+                if (leaderValue == null)
+                    return null;
+                if (leaderValue instanceof List && ((List) leaderValue).isEmpty())
+                    return (T) new ArrayList();
+                T t = cacheReader.load();
+                return t == null ? dbLoader.load() : t;
+            }
+        };
+    }
+
+    /**
+     * @param op 统计的操作, null: 回源时的重读, 不统计
+     * @return null: 结果Key列表不在缓存中
+     */
+    private <T> List<T> listFromCache(Class<T> clz, Object condition, Parsed parsed, String op) {
+
+        List<String> keyList = new ArrayList<String>();
+        List<T> list = cacheResolver.listByResultKey(clz, condition, keyList);
+
+        if (list == null) {
+            if (op != null)
+                metrics.miss(clz, op);
+            return null;
         }
 
+        if (keyList.size() == list.size()) {
+            if (op != null)
+                metrics.hit(clz, op);
+            return list;
+        }
+
+        if (op != null)
+            metrics.partialHit(clz, op, keyList.size() - list.size());
+
+        replenishAndRefreshCache(keyList, list, clz, parsed);
+
+        return sort(keyList, list, parsed);
     }
 
-    private <T> List<T> sort(List<String> keyList, List<T> list, Parsed parsed) {
-        List<T> sortedList = new ArrayList<T>();
-        for (String key : keyList) {
-            Iterator<T> ite = list.iterator();
-            while (ite.hasNext()) {
-                T t = ite.next();
-                if (key.equals(getCacheKey(t, parsed))) {
-                    ite.remove();
-                    sortedList.add(t);
-                    break;
-                }
-            }
+    private <T> List<T> cacheResultKeyList(Class<T> clz, Object condition, Parsed parsed, List<T> list) {
+
+        List<String> keyList = new ArrayList<String>();
+
+        for (T t : list) {
+            String key = getCacheKey(t, parsed);
+            keyList.add(key);
         }
-        return sortedList;
+
+        cacheResolver.setResultKeyList(clz, condition, keyList);
+
+        return list;
+    }
+
+    private <T> List<T> list(final Class<T> clz, final Object condition, final Parsed parsed, String op, final SingleFlight.Loader<List<T>> daoLoader) {
+
+        List<T> list = listFromCache(clz, condition, parsed, op);
+        if (list != null)
+            return list;
+
+        SingleFlight.Loader<List<T>> cacheReader = new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return listFromCache(clz, condition, parsed, null);
+            }
+        };
+        SingleFlight.Loader<List<T>> dbLoader = new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return cacheResultKeyList(clz, condition, parsed, daoLoader.load());
+            }
+        };
+
+        return loadOnMiss(clz, condition, cacheReader, dbLoader, reread(cacheReader, dbLoader));
     }
 
 
@@ -158,8 +388,20 @@ public class SqlRepository implements Repository {
         Parsed parsed = Parser.get(clz);
         long id = syncDao.create(obj);
 
-        if (!isNoCache() && !parsed.isNoCache())
-            cacheResolver.markForRefresh(clz);
+        if (!isNoCache() && !parsed.isNoCache()) {
+            String key = parsed.getKeyField(X.KEY_ONE).getType() == String.class ? getCacheKey(obj, parsed) : String.valueOf(id);
+            if (key != null) {
+                cacheResolver.remove(clz, key);// 清除不存在的缓存
+                if (parsed.isBloomFilter()) {
+                    KeyBloomFilters bloomFilters = getBloomFilters();
+                    if (bloomFilters != null) {
+                        bloomFilters.put(clz, key);
+                        cacheResolver.publishKey(clz, key);
+                    }
+                }
+            }
+            cacheResolver.markForCreate(clz, obj);
+        }
         return id;
     }
 
@@ -176,12 +418,54 @@ public class SqlRepository implements Repository {
             if (!isNoCache() && !parsed.isNoCache()) {
                 if (key != null)
                     cacheResolver.remove(clz, key);
-                cacheResolver.markForRefresh(clz);
+                markForRefresh(clz, parsed, obj, null);
             }
         }
         return flag;
     }
 
+    /**
+     * 更新了的对象, 一次pipeline删除缓存, 查询结果一次失效
+     */
+    @Override
+    public boolean[] refreshBatch(List<? extends Object> objList) {
+        testAvailable();
+        if (objList.isEmpty())
+            return new boolean[0];
+        Class clz = objList.get(0).getClass();
+        Parsed parsed = Parser.get(clz);
+        boolean[] results = syncDao.refreshBatch(objList);
+
+        if (isNoCache() || parsed.isNoCache())
+            return results;
+
+        boolean refreshed = false;
+        List<String> keyList = new ArrayList<>();
+        Set<String> propertySet = new HashSet<>();
+        for (int i = 0; i < results.length; i++) {
+            if (!results[i])
+                continue;
+            refreshed = true;
+            Object obj = objList.get(i);
+            String key = getCacheKey(obj, parsed);
+            if (key != null)
+                keyList.add(key);
+            propertySet.addAll(BeanUtilX.getRefreshMap(parsed, obj).keySet());
+        }
+        if (!refreshed)
+            return results;
+
+        if (!keyList.isEmpty())
+            cacheResolver.remove(clz, keyList);
+        if (cacheResolver.isDependencyTracking()) {
+            propertySet.remove(parsed.getKey(X.KEY_ONE));
+            cacheResolver.markForRefresh(clz, propertySet);
+        } else {
+            cacheResolver.markForRefresh(clz);
+        }
+        return results;
+    }
+
     @Override
     public <T> boolean refresh(RefreshCondition<T> refreshCondition) {
         testAvailable();
@@ -202,17 +486,41 @@ public class SqlRepository implements Repository {
             T obj = refreshCondition.getObj();
             if (Objects.isNull(obj)) {
                 cacheResolver.remove(clz);
-                cacheResolver.markForRefresh(clz);
             } else {
                 String key = getCacheKey(obj, parsed);
                 if (key != null)
                     cacheResolver.remove(clz, key);
-                cacheResolver.markForRefresh(clz);
             }
+            markForRefresh(clz, parsed, obj, refreshCondition.getRefreshList());
         }
         return flag;
     }
 
+    /**
+     * 依赖追踪时, 只让条件或排序用到被更新属性的查询结果失效<br>
+     * refresh(String sqlX)无法确定属性, 整个类失效
+     */
+    private void markForRefresh(Class clz, Parsed parsed, Object obj, List<Criteria.X> refreshList) {
+        if (!cacheResolver.isDependencyTracking()) {
+            cacheResolver.markForRefresh(clz);
+            return;
+        }
+        Set<String> propertySet = new HashSet<>();
+        if (obj != null)
+            propertySet.addAll(BeanUtilX.getRefreshMap(parsed, obj).keySet());
+        if (refreshList != null) {
+            for (Criteria.X x : refreshList) {
+                if (x.getKey() == null) {
+                    cacheResolver.markForRefresh(clz);
+                    return;
+                }
+                propertySet.add(x.getKey());
+            }
+        }
+        propertySet.remove(parsed.getKey(X.KEY_ONE));
+        cacheResolver.markForRefresh(clz, propertySet);
+    }
+
     /**
      * 配合refreshTime使用，后台按更新时间查询列表之前调用
      *
@@ -235,15 +543,60 @@ public class SqlRepository implements Repository {
         flag = syncDao.remove(obj);
 
         if (!isNoCache() && !parsed.isNoCache()) {
-            if (key != null)
+            if (key != null) {
                 cacheResolver.remove(clz, key);
-            cacheResolver.markForRefresh(clz);
+                cacheResolver.markForRemove(clz, key);
+            } else {
+                cacheResolver.markForRefresh(clz);
+            }
         }
         return flag;
     }
 
+    /**
+     * 删除了的对象, 一次pipeline删除缓存, 查询结果一次失效<br>
+     * 没有删除任何对象时, 不做失效
+     */
     @Override
-    public <T> T get(Class<T> clz, long idOne) {
+    public boolean[] removeBatch(List<? extends Object> objList) {
+        testAvailable();
+        if (objList.isEmpty())
+            return new boolean[0];
+        Class clz = objList.get(0).getClass();
+        Parsed parsed = Parser.get(clz);
+        List<String> keyList = new ArrayList<>(objList.size());
+        for (Object obj : objList) {
+            keyList.add(getCacheKey(obj, parsed));
+        }
+        boolean[] results = syncDao.removeBatch(objList);
+
+        if (isNoCache() || parsed.isNoCache())
+            return results;
+
+        int removedCount = 0;
+        List<String> removedKeyList = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (!results[i])
+                continue;
+            removedCount++;
+            String key = keyList.get(i);
+            if (key != null)
+                removedKeyList.add(key);
+        }
+        if (removedCount == 0)
+            return results;
+        if (!removedKeyList.isEmpty())
+            cacheResolver.remove(clz, removedKeyList);
+        if (removedKeyList.size() < removedCount) {
+            cacheResolver.markForRefresh(clz);
+        } else {
+            cacheResolver.markForRemove(clz, removedKeyList);
+        }
+        return results;
+    }
+
+    @Override
+    public <T> T get(final Class<T> clz, final long idOne) {
         testAvailable();
         Parsed parsed = Parser.get(clz);
 
@@ -251,19 +604,51 @@ public class SqlRepository implements Repository {
             return syncDao.get(clz, idOne);
         }
 
-        String key = String.valueOf(idOne);
-        T obj = cacheResolver.get(clz, key);
+        final String key = String.valueOf(idOne);
+
+        final SingleFlight.Loader<T> dbLoader = new SingleFlight.Loader<T>() {
+            @Override
+            public T load() {
+                T t = syncDao.get(clz, idOne);
+                cacheResolver.set(clz, key, t);
+                return t;
+            }
+        };
+
+        Optional<T> cached = cacheResolver.getNullable(clz, key, parsed.getCacheRefreshAheadSeconds(), new Runnable() {
+            @Override
+            public void run() {
+                dbLoader.load();
+            }
+        });
 
-        if (obj == null) {
-            obj = syncDao.get(clz, idOne);
-            cacheResolver.set(clz, key, obj);
+        if (cached != null) {
+            metrics.hit(clz, L2CacheMetrics.GET);
+            return cached.orElse(null);
+        }
+        metrics.miss(clz, L2CacheMetrics.GET);
+
+        /*
+         * 过滤器只拦截缓存里也没有的key, 漏收的新建key仍可从缓存读到
+         */
+        if (parsed.isBloomFilter()) {
+            KeyBloomFilters bloomFilters = getBloomFilters();
+            if (bloomFilters != null && !bloomFilters.mightContain(clz, parsed, key))
+                return null;
         }
 
-        return obj;
+        SingleFlight.Loader<T> cacheReader = new SingleFlight.Loader<T>() {
+            @Override
+            public T load() {
+                return cacheResolver.get(clz, key);
+            }
+        };
+
+        return loadOnMiss(clz, key, cacheReader, dbLoader, reread(cacheReader, dbLoader));
     }
 
     @Override
-    public <T> List<T> list(Object conditionObj) {
+    public <T> List<T> list(final Object conditionObj) {
         testAvailable();
         if (conditionObj instanceof CriteriaBuilder || conditionObj instanceof Criteria)
             throw new RuntimeException("Notes: parameter is not Criteria");
@@ -275,39 +660,68 @@ public class SqlRepository implements Repository {
             return syncDao.list(conditionObj);
         }
 
-        List<T> list = null;
-
-        List<String> keyList = cacheResolver.getResultKeyList(clz, conditionObj);
-
-        if (keyList == null || keyList.isEmpty()) {
-            list = syncDao.list(conditionObj);
-
-            keyList = new ArrayList<String>();
-
-            for (T t : list) {
-                String key = getCacheKey(t, parsed);
-                keyList.add(key);
+        return list(clz, conditionObj, parsed, L2CacheMetrics.LIST, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return syncDao.list(conditionObj);
             }
+        });
+    }
 
-            cacheResolver.setResultKeyList(clz, conditionObj, keyList);
+    /**
+     * 只有一个@X.Unique属性作为条件时, 返回这个条件, 否则返回null
+     */
+    private String getUniqueKey(Parsed parsed, Map<String, Object> queryMap) {
+        if (queryMap.size() != 1 || parsed.getUniqueKeySet().isEmpty())
+            return null;
+        Map.Entry<String, Object> entry = queryMap.entrySet().iterator().next();
+        if (!parsed.getUniqueKeySet().contains(entry.getKey()))
+            return null;
+        return entry.getKey() + "." + entry.getValue();
+    }
 
-            return list;
+    /**
+     * 唯一键只映射到主键, 对象从get(clz, id)的缓存读取<br>
+     * 读到的对象此属性已被修改, 或已删除时, 映射作废, 回库
+     */
+    private <T> T getOneByUniqueKey(Class<T> clz, Parsed parsed, T conditionObj, Map.Entry<String, Object> condition, String uniqueKey) {
+
+        String key = cacheResolver.getUniqueKey(clz, uniqueKey);
+        if (key != null) {
+            T obj = cacheResolver.get(clz, key);
+            if (obj != null && isUniqueKeyOf(obj, parsed, condition)) {
+                metrics.hit(clz, L2CacheMetrics.GET_ONE);
+                return obj;
+            }
         }
 
-        list = cacheResolver.list(clz, keyList);
-
-        if (keyList.size() == list.size())
-            return list;
-
-        replenishAndRefreshCache(keyList, list, clz, parsed);
-
-        List<T> sortedList = sort(keyList, list, parsed);
+        metrics.miss(clz, L2CacheMetrics.GET_ONE);
+        T obj = syncDao.getOne(conditionObj);
+        if (obj != null) {
+            key = getCacheKey(obj, parsed);
+            if (key != null) {
+                cacheResolver.set(clz, key, obj);
+                cacheResolver.setUniqueKey(clz, uniqueKey, key);
+            }
+        }
+        return obj;
+    }
 
-        return sortedList;
+    private boolean isUniqueKeyOf(Object obj, Parsed parsed, Map.Entry<String, Object> condition) {
+        try {
+            Object value = parsed.getElement(condition.getKey()).getMethod.invoke(obj);
+            return value != null && String.valueOf(value).equals(String.valueOf(condition.getValue()));
+        } catch (Exception e) {
+            return false;
+        }
     }
 
+    /**
+     * 按@X.Unique属性查询时, 缓存唯一键到主键的映射<br>
+     * 其他条件与list(obj)相同, 缓存结果Key列表, 随写操作失效
+     */
     @Override
-    public <T> T getOne(T conditionObj) {
+    public <T> T getOne(final T conditionObj) {
         testAvailable();
         Class<T> clz = (Class<T>) conditionObj.getClass();
         Parsed parsed = Parser.get(clz);
@@ -317,20 +731,24 @@ public class SqlRepository implements Repository {
             return t;
         }
 
-        String condition = JsonX.toJson(conditionObj);
-        T obj = cacheResolver.get(clz, condition);
+        Map<String, Object> queryMap = BeanUtilX.getQueryMap(parsed, conditionObj);
+        String uniqueKey = getUniqueKey(parsed, queryMap);
+        if (uniqueKey != null)
+            return getOneByUniqueKey(clz, parsed, conditionObj, queryMap.entrySet().iterator().next(), uniqueKey);
 
-        if (obj == null) {
-            obj = syncDao.getOne(conditionObj);
-            cacheResolver.set(clz, condition, obj);
-            return obj;
-        }
+        String condition = "getOne:" + JsonX.toJson(conditionObj);
+        List<T> list = list(clz, condition, parsed, L2CacheMetrics.GET_ONE, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return toList(syncDao.getOne(conditionObj));
+            }
+        });
 
-        return obj;
+        return list.isEmpty() ? null : list.get(0);
     }
 
     @Override
-    public <T> T getOne(T conditionObj, String orderBy, Direction sc) {
+    public <T> T getOne(final T conditionObj, final String orderBy, final Direction sc) {
         testAvailable();
         Class<T> clz = (Class<T>) conditionObj.getClass();
         Parsed parsed = Parser.get(clz);
@@ -339,72 +757,57 @@ public class SqlRepository implements Repository {
             return (T) syncDao.getOne(conditionObj, orderBy, sc);
         }
 
-        String condition = JsonX.toJson(conditionObj) + orderBy + sc;
-
-        T obj = cacheResolver.get(clz, condition);
-
-        if (obj == null) {
-            T t = syncDao.getOne(conditionObj, orderBy, sc);
-
-            cacheResolver.set(clz, condition, obj);
-
-            return t;
-        }
+        String condition = "getOne:" + JsonX.toJson(conditionObj) + orderBy + sc;
+        List<T> list = list(clz, condition, parsed, L2CacheMetrics.GET_ONE, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return toList((T) syncDao.getOne(conditionObj, orderBy, sc));
+            }
+        });
 
-        return obj;
+        return list.isEmpty() ? null : list.get(0);
     }
 
-    @Override
-    public <T> Page<T> find(Criteria criteria) {
-        testAvailable();
-        Class clz = criteria.getClz();
-        Parsed parsed = Parser.get(clz);
-
-
-        if (isNoCache()) {
-            return syncDao.find(criteria);
-        }
+    private <T> List<T> toList(T obj) {
+        List<T> list = new ArrayList<T>();
+        if (obj != null)
+            list.add(obj);
+        return list;
+    }
 
-        List<T> list = null;
+    /**
+     * @param isCounted 是否统计, 回源时的重读不统计
+     * @return null: 分页不在缓存中
+     */
+    private <T> Page<T> findFromCache(Class<T> clz, Criteria criteria, Parsed parsed, boolean isCounted) {
 
-        Page<T> p = cacheResolver.getResultKeyListPaginated(clz, criteria);// FIXME
+        Page<T> p = cacheResolver.findByResultKey(clz, criteria);
 
         if (p == null) {
-            syncDao.find(criteria);
-
-            list = p.getList(); // 结果
-
-            List<String> keyList = p.getKeyList();
-
-            for (T t : list) {
-
-                String key = getCacheKey(t, parsed);
-                keyList.add(key);
-            }
-
-            p.reSetList(null);
-
-            cacheResolver.setResultKeyListPaginated(clz, criteria, p);
-
-            p.setKeyList(null);
-            p.reSetList(list);
-
-            return p;
+            if (isCounted)
+                metrics.miss(clz, L2CacheMetrics.FIND);
+            return null;
         }
 
         List<String> keyList = p.getKeyList();
 
         if (keyList == null || keyList.isEmpty()) {
+            if (isCounted)
+                metrics.hit(clz, L2CacheMetrics.FIND);
             return p;
         }
 
-        list = cacheResolver.list(clz, keyList);
+        List<T> list = p.getList();
 
         if (keyList.size() == list.size()) {
-            p.reSetList(list);
+            if (isCounted)
+                metrics.hit(clz, L2CacheMetrics.FIND);
             return p;
         }
 
+        if (isCounted)
+            metrics.partialHit(clz, L2CacheMetrics.FIND, keyList.size() - list.size());
+
         replenishAndRefreshCache(keyList, list, clz, parsed);
 
         List<T> sortedList = sort(keyList, list, parsed);
@@ -415,49 +818,90 @@ public class SqlRepository implements Repository {
     }
 
     @Override
-    public <T> List<T> list(Criteria criteria) {
+    public <T> Page<T> find(final Criteria criteria) {
         testAvailable();
-        Class clz = criteria.getClz();
-        Parsed parsed = Parser.get(clz);
+        final Class clz = criteria.getClz();
+        final Parsed parsed = Parser.get(clz);
+
 
         if (isNoCache()) {
-            return syncDao.list(criteria);
+            return syncDao.find(criteria);
         }
 
-        List<T> list = null;
+        Page<T> p = findFromCache(clz, criteria, parsed, true);
 
-        List<String> keyList = cacheResolver.getResultKeyList(clz, criteria);
+        if (p != null)
+            return p;
 
-        if (keyList == null || keyList.isEmpty()) {
-            list = syncDao.list(criteria);
+        final SingleFlight.Loader<Page<T>> cacheReader = new SingleFlight.Loader<Page<T>>() {
+            @Override
+            public Page<T> load() {
+                return findFromCache(clz, criteria, parsed, false);
+            }
+        };
+        final SingleFlight.Loader<Page<T>> dbLoader = new SingleFlight.Loader<Page<T>>() {
+            @Override
+            public Page<T> load() {
+                Page<T> p = syncDao.find(criteria);
 
-            keyList = new ArrayList<>();
+                List<T> list = p.getList(); // 结果
 
-            for (T t : list) {
-                String key = getCacheKey(t, parsed);
-                keyList.add(key);
-            }
+                List<String> keyList = p.getKeyList();
 
-            cacheResolver.setResultKeyList(clz, criteria, keyList);
+                for (T t : list) {
 
-            return list;
-        }
+                    String key = getCacheKey(t, parsed);
+                    keyList.add(key);
+                }
 
-        list = cacheResolver.list(clz, keyList);
+                p.reSetList(null);
 
-        if (keyList.size() == list.size())
-            return list;
+                cacheResolver.setResultKeyListPaginated(clz, criteria, p);
 
-        replenishAndRefreshCache(keyList, list, clz, parsed);
+                p.setKeyList(null);
+                p.reSetList(list);
 
-        List<T> sortedList = sort(keyList, list, parsed);
+                return p;
+            }
+        };
 
-        return sortedList;
+        return loadOnMiss(clz, criteria, cacheReader, dbLoader, reread(cacheReader, dbLoader));
+    }
+
+    @Override
+    public <T> List<T> list(final Criteria criteria) {
+        testAvailable();
+        Class clz = criteria.getClz();
+        Parsed parsed = Parser.get(clz);
 
+        if (isNoCache()) {
+            return syncDao.list(criteria);
+        }
+
+        return list(clz, criteria, parsed, L2CacheMetrics.LIST, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return syncDao.list(criteria);
+            }
+        });
+
+    }
+
+    @Override
+    public <T> Stream<T> stream(Criteria criteria) {
+        testAvailable();
+        return syncDao.stream(criteria);
+    }
+
+    @Override
+    public <T> void forEach(Criteria criteria, Consumer<T> consumer) {
+        try (Stream<T> stream = stream(criteria)) {
+            stream.forEach(consumer);
+        }
     }
 
     @Override
-    public <T> List<T> list(Class<T> clz) {
+    public <T> List<T> list(final Class<T> clz) {
         testAvailable();
         Parsed parsed = Parser.get(clz);
 
@@ -465,44 +909,90 @@ public class SqlRepository implements Repository {
             return syncDao.list(clz);
         }
 
-        List<T> list = null;
-
         String condition = "loadAll";
 
-        List<String> keyList = cacheResolver.getResultKeyList(clz, condition);
+        return list(clz, condition, parsed, L2CacheMetrics.LIST, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return syncDao.list(clz);
+            }
+        });
+    }
 
-        if (keyList == null || keyList.isEmpty()) {
-            list = syncDao.list(clz);
+    @Override
+    public Object reduce(final ReduceCondition reduceCondition) {
+        testAvailable();
+        Class clz = reduceCondition.getClz();
 
-            keyList = new ArrayList<String>();
+        if (isNoCache() || Parser.get(clz).isNoCache()) {
+            return syncDao.reduce(reduceCondition);
+        }
 
-            for (T t : list) {
-                String key = getCacheKey(t, parsed);
-                keyList.add(key);
+        String condition = reduceCondition.getType() + "." + reduceCondition.getReduceProperty() + "." + cacheResolver.createCondition(reduceCondition.getCondition());
+        List<Class> clzList = new ArrayList<>();
+        clzList.add(clz);
+
+        return resultMapped(clzList, "reduce." + VerifyUtil.toMD5(condition), L2CacheMetrics.REDUCE, new SingleFlight.Loader<Object>() {
+            @Override
+            public Object load() {
+                return syncDao.reduce(reduceCondition);
             }
+        });
+    }
 
-            cacheResolver.setResultKeyList(clz, condition, keyList);
+    private final static Object MISS = new Object();
 
-            return list;
+    /**
+     * @return MISS: 未命中, 或无法解码
+     */
+    private Object getResultMapped(List<Class> clzList, String condition) {
+        byte[] bytes = cacheResolver.getResultMapped(clzList, condition);
+        if (bytes == null)
+            return MISS;
+        try {
+            return ResultMappedCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            logger.warn("L2 Cache result mapped decode failed: " + e.getMessage());
+            return MISS;
         }
+    }
 
-        list = cacheResolver.list(clz, keyList);// FIXME 可能要先转Object
-
-        if (keyList.size() == list.size())
-            return list;
+    /**
+     * ResultMapped查询和reduce的结果, 编码后缓存<br>
+     * 依赖的任一类写后失效; 含有不支持的类型时不缓存<br>
+     * 每次命中都解码出新的对象, 调用方可以修改<br>
+     * @param condition 在查库之前算好, 查库时条件可能被修改
+     */
+    private <T> T resultMapped(final List<Class> clzList, final String condition, String op, final SingleFlight.Loader<T> daoLoader) {
 
-        replenishAndRefreshCache(keyList, list, clz, parsed);
+        Class clz = clzList.get(0);
 
-        List<T> sortedList = sort(keyList, list, parsed);
-
-        return sortedList;
-    }
+        Object obj = getResultMapped(clzList, condition);
+        if (obj != MISS) {
+            metrics.hit(clz, op);
+            return (T) obj;
+        }
+        metrics.miss(clz, op);
 
-    @Override
-    public Object reduce(ReduceCondition reduceCondition) {
-        testAvailable();
-        return syncDao.reduce(reduceCondition);
+        SingleFlight.Loader<T> cacheReader = new SingleFlight.Loader<T>() {
+            @Override
+            public T load() {
+                Object obj = getResultMapped(clzList, condition);
+                return obj == MISS ? null : (T) obj;
+            }
+        };
+        SingleFlight.Loader<T> dbLoader = new SingleFlight.Loader<T>() {
+            @Override
+            public T load() {
+                T t = daoLoader.load();
+                byte[] bytes = ResultMappedCodec.encode(t);
+                if (bytes != null)
+                    cacheResolver.setResultMapped(clzList, condition, bytes);
+                return t;
+            }
+        };
 
+        return loadOnMiss(clz, condition, cacheReader, dbLoader, reread(cacheReader, dbLoader));
     }
 
     protected <T> boolean execute(T obj, String sql) {
@@ -524,7 +1014,7 @@ public class SqlRepository implements Repository {
     }
 
 
-    protected <T> List<T> in0(InCondition inCondition) {
+    protected <T> List<T> in0(final InCondition inCondition) {
 
         Class clz = inCondition.getClz();
         String inProperty = inCondition.getProperty();
@@ -544,36 +1034,12 @@ public class SqlRepository implements Repository {
         }
         String condition = sb.toString();
 
-        List<String> keyList = cacheResolver.getResultKeyList(clz, condition);
-
-        List<T> list = null;
-
-        if (keyList == null || keyList.isEmpty()) {
-
-            list = syncDao.in(inCondition);
-
-            keyList = new ArrayList<String>();
-
-            for (T t : list) {
-                String key = getCacheKey(t, parsed);
-                keyList.add(key);
+        return list(clz, condition, parsed, L2CacheMetrics.IN, new SingleFlight.Loader<List<T>>() {
+            @Override
+            public List<T> load() {
+                return syncDao.in(inCondition);
             }
-
-            cacheResolver.setResultKeyList(clz, condition, keyList);
-
-            return list;
-        }
-
-        list = cacheResolver.list(clz, keyList);// FIXME 可能要先转Object
-
-        if (keyList.size() == list.size())
-            return list;
-
-        replenishAndRefreshCache(keyList, list, clz, parsed);
-
-        List<T> sortedList = sort(keyList, list, parsed);
-
-        return sortedList;
+        });
 
     }
 
@@ -625,15 +1091,37 @@ public class SqlRepository implements Repository {
 
 
     @Override
-    public Page<Map<String, Object>> find(Criteria.ResultMappedCriteria resultMapped) {
+    public Page<Map<String, Object>> find(final Criteria.ResultMappedCriteria resultMapped) {
         testAvailable();
-        return syncDao.find(resultMapped);
+
+        List<Class> clzList = isNoCache() ? null : ResultMappedDependency.of(resultMapped);
+        if (ResultMappedDependency.isNoCache(clzList)) {
+            return syncDao.find(resultMapped);
+        }
+
+        return resultMapped(clzList, "find." + resultMapped.fingerprint(), L2CacheMetrics.RESULT_MAPPED, new SingleFlight.Loader<Page<Map<String, Object>>>() {
+            @Override
+            public Page<Map<String, Object>> load() {
+                return syncDao.find(resultMapped);
+            }
+        });
     }
 
     @Override
-    public List<Map<String, Object>> list(Criteria.ResultMappedCriteria resultMapped) {
+    public List<Map<String, Object>> list(final Criteria.ResultMappedCriteria resultMapped) {
         testAvailable();
-        return syncDao.list(resultMapped);
+
+        List<Class> clzList = isNoCache() ? null : ResultMappedDependency.of(resultMapped);
+        if (ResultMappedDependency.isNoCache(clzList)) {
+            return syncDao.list(resultMapped);
+        }
+
+        return resultMapped(clzList, "list." + resultMapped.fingerprint(), L2CacheMetrics.RESULT_MAPPED, new SingleFlight.Loader<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> load() {
+                return syncDao.list(resultMapped);
+            }
+        });
     }
 
     @Override
@@ -643,11 +1131,49 @@ public class SqlRepository implements Repository {
             return false;
         Class clz = objList.get(0).getClass();
         Parsed parsed = Parser.get(clz);
-        boolean flag = this.syncDao.createBatch(objList);
-        if (!isNoCache() && !parsed.isNoCache())
-            cacheResolver.markForRefresh(clz);
+        int createdCount = 0;
+        try {
+            boolean flag = this.syncDao.createBatch(objList);
+            createdCount = objList.size();
+            return flag;
+        } catch (CreateBatchException e) {
+            createdCount = e.getCreatedCount();
+            throw e;
+        } finally {
+            /*
+             * 分块提交, 失败时之前的块也已写入
+             */
+            if (!isNoCache() && !parsed.isNoCache()) {
+                onCreated(clz, parsed, objList.subList(0, createdCount));
+                cacheResolver.markForRefresh(clz);
+            }
+        }
+    }
 
-        return flag;
+    /**
+     * 与create相同: 清除不存在的缓存, 加入布隆过滤器并通知其他节点
+     */
+    private void onCreated(Class clz, Parsed parsed, List<? extends Object> objList) {
+        if (objList.isEmpty())
+            return;
+        List<String> keyList = new ArrayList<>(objList.size());
+        for (Object obj : objList) {
+            String key = getCacheKey(obj, parsed);
+            if (key != null && !key.equals("0"))
+                keyList.add(key);
+        }
+        if (keyList.isEmpty())
+            return;
+        cacheResolver.remove(clz, keyList);
+        if (parsed.isBloomFilter()) {
+            KeyBloomFilters bloomFilters = getBloomFilters();
+            if (bloomFilters != null) {
+                for (String key : keyList) {
+                    bloomFilters.put(clz, key);
+                    cacheResolver.publishKey(clz, key);
+                }
+            }
+        }
     }
 
     protected List<Map<String, Object>> list(Class clz, String sql, List<Object> conditionList) {
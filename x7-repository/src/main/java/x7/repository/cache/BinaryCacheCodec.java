@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.bean.BeanElement;
+import x7.core.bean.BeanSerial;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
+import x7.core.repository.ISerialWR;
+import x7.core.util.JsonX;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * 紧凑的二进制编解码<br>
+ * 按Parsed的BeanElement顺序写字段值, 不写字段名<br>
+ * 头部带schema指纹, 实体字段变更后旧缓存按未命中处理<br>
+ * 如果存在 {clzName}WR 实现了ISerialWR, 则交给它读写<br>
+ * @author sim
+ *
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+	private final static Logger logger = LoggerFactory.getLogger(BinaryCacheCodec.class);
+
+	private final static byte MAGIC = (byte) 0xB7;
+	private final static byte FIELDS = 0;
+	private final static byte SERIAL_WR = 1;
+
+	private final static int BOOLEAN = 1;
+	private final static int BYTE = 2;
+	private final static int SHORT = 3;
+	private final static int INT = 4;
+	private final static int LONG = 5;
+	private final static int FLOAT = 6;
+	private final static int DOUBLE = 7;
+	private final static int STRING = 8;
+	private final static int DATE = 9;
+	private final static int TIMESTAMP = 10;
+	private final static int SQL_DATE = 11;
+	private final static int BIG_DECIMAL = 12;
+	private final static int ENUM = 13;
+	private final static int JSON = 14;
+
+	private final Map<Class, Schema> schemaMap = new ConcurrentHashMap<>();
+
+	@Override
+	public byte[] encode(Object obj) {
+		Schema schema = getSchema(obj.getClass());
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+			DataOutputStream out = new DataOutputStream(bos);
+			out.writeByte(MAGIC);
+			out.writeInt(schema.fingerprint);
+			if (schema.serialWR != null) {
+				out.writeByte(SERIAL_WR);
+				ByteBuffer buffer = schema.serialWR.write(obj);
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				out.write(bytes);
+			} else {
+				out.writeByte(FIELDS);
+				for (int i = 0; i < schema.elements.length; i++) {
+					BeanElement element = schema.elements[i];
+					write(out, schema.types[i], element, element.getMethod.invoke(obj));
+				}
+			}
+			out.flush();
+			return bos.toByteArray();
+		}catch (Exception e) {
+			throw new RuntimeException("L2 Cache encode failed, " + obj.getClass().getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public <T> T decode(byte[] bytes, Class<T> clz) {
+		Schema schema = getSchema(clz);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			if (buffer.remaining() < 6 || buffer.get() != MAGIC || buffer.getInt() != schema.fingerprint)
+				return null;
+			if (buffer.get() == SERIAL_WR) {
+				if (schema.serialWR == null)
+					return null;
+				return schema.serialWR.read(buffer.slice());
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), buffer.remaining()));
+			T obj = clz.newInstance();
+			for (int i = 0; i < schema.elements.length; i++) {
+				BeanElement element = schema.elements[i];
+				Object value = read(in, schema.types[i], element);
+				if (value != null) {
+					element.setMethod.invoke(obj, value);
+				}
+			}
+			return obj;
+		}catch (Exception e) {
+			logger.warn("L2 Cache decode failed, " + clz.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private Schema getSchema(Class clz) {
+		Schema schema = this.schemaMap.get(clz);
+		if (schema == null) {
+			schema = new Schema(clz);
+			this.schemaMap.put(clz, schema);
+		}
+		return schema;
+	}
+
+	private static int typeOf(BeanElement element) {
+		Class clz = element.clz;
+		if (element.isJson)
+			return JSON;
+		if (clz == boolean.class || clz == Boolean.class)
+			return BOOLEAN;
+		if (clz == byte.class || clz == Byte.class)
+			return BYTE;
+		if (clz == short.class || clz == Short.class)
+			return SHORT;
+		if (clz == int.class || clz == Integer.class)
+			return INT;
+		if (clz == long.class || clz == Long.class)
+			return LONG;
+		if (clz == float.class || clz == Float.class)
+			return FLOAT;
+		if (clz == double.class || clz == Double.class)
+			return DOUBLE;
+		if (clz == String.class)
+			return STRING;
+		if (clz == java.sql.Timestamp.class)
+			return TIMESTAMP;
+		if (clz == java.sql.Date.class)
+			return SQL_DATE;
+		if (clz == Date.class)
+			return DATE;
+		if (clz == BigDecimal.class)
+			return BIG_DECIMAL;
+		if (clz.isEnum())
+			return ENUM;
+		return JSON;
+	}
+
+	private void write(DataOutputStream out, int type, BeanElement element, Object value) throws IOException {
+		if (value == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		switch (type) {
+			case BOOLEAN:
+				out.writeBoolean((Boolean) value);
+				break;
+			case BYTE:
+				out.writeByte((Byte) value);
+				break;
+			case SHORT:
+				out.writeShort((Short) value);
+				break;
+			case INT:
+				out.writeInt((Integer) value);
+				break;
+			case LONG:
+				out.writeLong((Long) value);
+				break;
+			case FLOAT:
+				out.writeFloat((Float) value);
+				break;
+			case DOUBLE:
+				out.writeDouble((Double) value);
+				break;
+			case DATE:
+			case TIMESTAMP:
+			case SQL_DATE:
+				out.writeLong(((Date) value).getTime());
+				break;
+			case BIG_DECIMAL:
+				writeString(out, value.toString());
+				break;
+			case ENUM:
+				writeString(out, ((Enum) value).name());
+				break;
+			case STRING:
+				writeString(out, (String) value);
+				break;
+			default:
+				writeString(out, JsonX.toJson(value));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object read(DataInputStream in, int type, BeanElement element) throws IOException {
+		if (!in.readBoolean())
+			return null;
+		switch (type) {
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case SHORT:
+				return in.readShort();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case DATE:
+				return new Date(in.readLong());
+			case TIMESTAMP:
+				return new java.sql.Timestamp(in.readLong());
+			case SQL_DATE:
+				return new java.sql.Date(in.readLong());
+			case BIG_DECIMAL:
+				return new BigDecimal(readString(in));
+			case ENUM:
+				return Enum.valueOf(element.clz, readString(in));
+			case STRING:
+				return readString(in);
+			default:
+				String json = readString(in);
+				if (element.clz == List.class)
+					return JsonX.toList(json, element.geneType);
+				if (element.clz == Map.class)
+					return JsonX.toMap(json);
+				return JsonX.toObject(json, element.clz);
+		}
+	}
+
+	private void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static class Schema {
+		private final BeanElement[] elements;
+		private final int[] types;
+		private final int fingerprint;
+		private final ISerialWR serialWR;
+
+		private Schema(Class clz) {
+			Parsed parsed = Parser.get(clz);
+			List<BeanElement> list = parsed.getBeanElementList();
+			this.elements = list.toArray(new BeanElement[list.size()]);
+			this.types = new int[this.elements.length];
+			int hash = clz.getName().hashCode();
+			for (int i = 0; i < this.elements.length; i++) {
+				BeanElement element = this.elements[i];
+				this.types[i] = typeOf(element);
+				hash = 31 * hash + element.property.hashCode();
+				hash = 31 * hash + this.types[i];
+			}
+			this.fingerprint = hash;
+			this.serialWR = BeanSerial.get(clz.getName());
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * 布隆过滤器, 无锁, 只增不删<br>
+ * @author sim
+ *
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long bitSize;
+	private final int hashCount;
+
+	public BloomFilter(int expectedSize, double fpp) {
+		long m = (long) (-Math.max(expectedSize, 1) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		m = Math.max(m, 64);
+		this.bits = new AtomicLongArray((int) ((m + 63) >>> 6));
+		this.bitSize = this.bits.length() * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) m / Math.max(expectedSize, 1) * Math.log(2)));
+	}
+
+	public void put(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= this.hashCount; i++) {
+			long index = ((h1 + i * h2) & Integer.MAX_VALUE) % this.bitSize;
+			int word = (int) (index >>> 6);
+			long mask = 1L << index;
+			long value;
+			do {
+				value = this.bits.get(word);
+				if ((value & mask) != 0)
+					break;
+			} while (!this.bits.compareAndSet(word, value, value | mask));
+		}
+	}
+
+	/**
+	 * @return false: 一定不存在
+	 */
+	public boolean mightContain(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= this.hashCount; i++) {
+			long index = ((h1 + i * h2) & Integer.MAX_VALUE) % this.bitSize;
+			if ((this.bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0, length = key.length(); i < length; i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+/**
+ * 
+ * 二级缓存对象的编解码<br>
+ * 所有节点须使用相同的实现<br>
+ * @author sim
+ *
+ */
+public interface CacheCodec {
+
+	/**
+	 * @param obj not null
+	 */
+	byte[] encode(Object obj);
+
+	/**
+	 * @return null: 无法解码, 按缓存未命中处理
+	 */
+	<T> T decode(byte[] bytes, Class<T> clz);
+}
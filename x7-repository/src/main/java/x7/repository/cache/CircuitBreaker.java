@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 
+ * 缓存的熔断器<br>
+ * 一个统计窗口内, 出错或超过耗时预算的调用占比达到阈值时打开<br>
+ * 打开后调用方绕过缓存; 后台定时探测, 探测成功且未超预算时关闭<br>
+ * call()在有界线程池里执行, 调用方最多等待耗时预算, 超时则中断并按失败处理<br>
+ * 线程都在忙时直接失败, 不排队<br>
+ * @author sim
+ *
+ */
+public class CircuitBreaker {
+
+	private final static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public interface Probe {
+		/**
+		 * 探测缓存是否恢复, 抛出异常表示未恢复
+		 */
+		void probe() throws Exception;
+	}
+
+	private final static long WINDOW_MILLIS = 10000;
+	private final static int MIN_CALLS = 20;
+	private final static int FAILURE_PERCENT = 50;
+	private final static int MAX_THREADS = 256;
+
+	private final long budgetNanos;
+	private final long openMillis;
+	private final Probe probe;
+	private final ScheduledExecutorService probeScheduler;
+	private final ThreadPoolExecutor callExecutor;
+
+	private volatile boolean isOpen;
+	private volatile long windowStart = System.currentTimeMillis();
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * @param budgetMillis 单次调用的耗时预算
+	 * @param openMillis 打开后多久开始探测, 也是探测的间隔
+	 */
+	public CircuitBreaker(long budgetMillis, long openMillis, Probe probe) {
+		this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+		this.openMillis = openMillis;
+		this.probe = probe;
+		this.probeScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "x7-L2-breaker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.callExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "x7-L2-call-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.callExecutor.allowCoreThreadTimeOut(true);
+		logger.info("L2 Cache circuit breaker, budget = " + budgetMillis + "ms, open = " + openMillis + "ms");
+	}
+
+	public boolean isOpen() {
+		return this.isOpen;
+	}
+
+	/**
+	 * 在耗时预算内执行, 不计入统计, 由调用方调用onSuccess或onFailure
+	 * @throws TimeoutException 超过预算, 调用已被中断
+	 * @throws java.util.concurrent.RejectedExecutionException 同时进行的调用过多
+	 */
+	public <T> T call(Callable<T> callable) throws Exception {
+		Future<T> future = this.callExecutor.submit(callable);
+		try {
+			return future.get(this.budgetNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new TimeoutException("over budget " + TimeUnit.NANOSECONDS.toMillis(this.budgetNanos) + "ms");
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * @param startNanos System.nanoTime(), 调用之前
+	 */
+	public void onSuccess(long startNanos) {
+		if (System.nanoTime() - startNanos > this.budgetNanos) {
+			onFailure();
+			return;
+		}
+		count(false);
+	}
+
+	public void onFailure() {
+		count(true);
+	}
+
+	private void count(boolean isFailure) {
+		long now = System.currentTimeMillis();
+		if (now - this.windowStart >= WINDOW_MILLIS) {
+			synchronized (this) {
+				if (now - this.windowStart >= WINDOW_MILLIS) {
+					this.calls.set(0);
+					this.failures.set(0);
+					this.windowStart = now;
+				}
+			}
+		}
+		int calls = this.calls.incrementAndGet();
+		if (!isFailure)
+			return;
+		int failures = this.failures.incrementAndGet();
+		if (calls >= MIN_CALLS && failures * 100 >= calls * FAILURE_PERCENT)
+			trip("failures " + failures + "/" + calls);
+	}
+
+	/**
+	 * 立即打开, 如失效操作失败, 不能再读缓存
+	 */
+	public void trip(String reason) {
+		synchronized (this) {
+			if (this.isOpen)
+				return;
+			this.isOpen = true;
+		}
+		logger.error("L2 Cache circuit breaker opened, " + reason + ", reads go to the database");
+		scheduleProbe();
+	}
+
+	private void scheduleProbe() {
+		this.probeScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (tryProbe()) {
+					close();
+				} else {
+					scheduleProbe();
+				}
+			}
+		}, this.openMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private boolean tryProbe() {
+		long startNanos = System.nanoTime();
+		try {
+			this.probe.probe();
+		} catch (Exception e) {
+			logger.warn("L2 Cache circuit breaker probe failed: " + e.getMessage());
+			return false;
+		}
+		return System.nanoTime() - startNanos <= this.budgetNanos;
+	}
+
+	private void close() {
+		synchronized (this) {
+			this.calls.set(0);
+			this.failures.set(0);
+			this.windowStart = System.currentTimeMillis();
+			this.isOpen = false;
+		}
+		logger.info("L2 Cache circuit breaker closed");
+	}
+}
@@ -0,0 +1,552 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.repository.CacheResolver;
+import x7.core.web.Page;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * 在另一个CacheResolver前面加熔断器<br>
+ * 熔断打开时, 读返回未命中, 由调用方直接查库; 写缓存跳过<br>
+ * 读在预算内没有返回, 按未命中处理; 写和失效在调用线程执行, 超预算只计入熔断统计<br>
+ * 失效操作不能丢: 打开时仍然执行, 失败时立即熔断并记下类<br>
+ * 关闭后, 先让记下的类整体失效(代数和命名空间), 再读缓存<br>
+ * @author sim
+ *
+ */
+public class CircuitBreakerCacheResolver implements CacheResolver {
+
+	private final static Logger logger = LoggerFactory.getLogger(CircuitBreakerCacheResolver.class);
+
+	private final CacheResolver cacheResolver;
+	private final CircuitBreaker breaker;
+	private final Set<Class> dirtySet = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param cacheResolver 后面的缓存
+	 * @param budgetMillis 单次调用的耗时预算
+	 * @param openMillis 熔断后的探测间隔
+	 * @param probe 探测后面的缓存是否恢复
+	 */
+	public CircuitBreakerCacheResolver(CacheResolver cacheResolver, long budgetMillis, long openMillis, CircuitBreaker.Probe probe) {
+		this.cacheResolver = cacheResolver;
+		this.breaker = new CircuitBreaker(budgetMillis, openMillis, probe);
+	}
+
+	public boolean isOpen() {
+		return this.breaker.isOpen();
+	}
+
+	/**
+	 * 熔断关闭, 且熔断期间跳过的失效已补上
+	 */
+	private boolean isAvailable() {
+		if (this.breaker.isOpen())
+			return false;
+		if (this.dirtySet.isEmpty())
+			return true;
+		for (Class clz : this.dirtySet) {
+			try {
+				this.cacheResolver.remove(clz);
+				this.cacheResolver.markForRefresh(clz);
+				this.dirtySet.remove(clz);
+			} catch (Exception e) {
+				this.breaker.trip("replay invalidation of " + clz.getName() + " failed: " + e.getMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void onInvalidationFailure(Class clz, Exception e) {
+		this.dirtySet.add(clz);
+		this.breaker.trip("invalidation of " + clz.getName() + " failed: " + e.getMessage());
+	}
+
+	private void onReadFailure(Exception e) {
+		this.breaker.onFailure();
+		logger.warn("L2 Cache read failed, go to the database: " + e.getMessage());
+	}
+
+	private void onWriteFailure(Exception e) {
+		this.breaker.onFailure();
+		logger.warn("L2 Cache write skipped: " + e.getMessage());
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String markForRefresh(Class clz) {
+		String time = String.valueOf(System.nanoTime());
+		try {
+			return this.cacheResolver.markForRefresh(clz);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+			return time;
+		}
+	}
+
+	@Override
+	public boolean isDependencyTracking() {
+		return this.cacheResolver.isDependencyTracking();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForCreate(Class clz, Object obj) {
+		try {
+			this.cacheResolver.markForCreate(clz, obj);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRefresh(Class clz, Collection<String> propertyList) {
+		try {
+			this.cacheResolver.markForRefresh(clz, propertyList);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, String key) {
+		try {
+			this.cacheResolver.markForRemove(clz, key);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, List<String> keyList) {
+		try {
+			this.cacheResolver.markForRemove(clz, keyList);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, String key) {
+		try {
+			this.cacheResolver.remove(clz, key);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, List<String> keyList) {
+		try {
+			this.cacheResolver.remove(clz, keyList);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz) {
+		try {
+			this.cacheResolver.remove(clz);
+		} catch (Exception e) {
+			onInvalidationFailure(clz, e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, String key, Object obj) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.set(clz, key, obj);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, Map<String, ? extends Object> objMap) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.set(clz, objMap);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@Override
+	public <T> T get(Class<T> clz, String key) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			T t = this.breaker.call(new Callable<T>() {
+				@Override
+				public T call() {
+					return cacheResolver.get(clz, key);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return t;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			Optional<T> optional = this.breaker.call(new Callable<Optional<T>>() {
+				@Override
+				public Optional<T> call() {
+					return cacheResolver.getNullable(clz, key);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return optional;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key, int refreshAheadSeconds, Runnable reloader) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			Optional<T> optional = this.breaker.call(new Callable<Optional<T>>() {
+				@Override
+				public Optional<T> call() {
+					return cacheResolver.getNullable(clz, key, refreshAheadSeconds, reloader);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return optional;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultKeyList(Class clz, Object conditionObj, List<String> keyList) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.setResultKeyList(clz, conditionObj, keyList);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@Override
+	public <T> void setResultKeyListPaginated(Class<T> clz, Object conditionObj, Page<T> pagination) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.setResultKeyListPaginated(clz, conditionObj, pagination);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List<String> getResultKeyList(Class clz, Object conditionObj) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			List<String> keyList = this.breaker.call(new Callable<List<String>>() {
+				@Override
+				public List<String> call() {
+					return cacheResolver.getResultKeyList(clz, conditionObj);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return keyList;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> Page<T> getResultKeyListPaginated(Class<T> clz, Object conditionObj) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			Page<T> p = this.breaker.call(new Callable<Page<T>>() {
+				@Override
+				public Page<T> call() {
+					return cacheResolver.getResultKeyListPaginated(clz, conditionObj);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return p;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> List<T> list(Class<T> clz, List<String> keyList) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			List<T> list = this.breaker.call(new Callable<List<T>>() {
+				@Override
+				public List<T> call() {
+					return cacheResolver.list(clz, keyList);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return list;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public <T> List<T> listByResultKey(Class<T> clz, Object conditionObj, List<String> keyList) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			List<T> list = this.breaker.call(new Callable<List<T>>() {
+				@Override
+				public List<T> call() {
+					return cacheResolver.listByResultKey(clz, conditionObj, keyList);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return list;
+		} catch (Exception e) {
+			onReadFailure(e);
+			keyList.clear();
+			return null;
+		}
+	}
+
+	@Override
+	public <T> Page<T> findByResultKey(Class<T> clz, Object conditionObj) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			Page<T> p = this.breaker.call(new Callable<Page<T>>() {
+				@Override
+				public Page<T> call() {
+					return cacheResolver.findByResultKey(clz, conditionObj);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return p;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	/**
+	 * 熔断时不等待其他节点回源
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean tryLease(Class clz, Object conditionObj, long millis) {
+		if (!isAvailable())
+			return true;
+		return this.cacheResolver.tryLease(clz, conditionObj, millis);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void releaseLease(Class clz, Object conditionObj) {
+		if (!isAvailable())
+			return;
+		this.cacheResolver.releaseLease(clz, conditionObj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void publishKey(Class clz, String key) {
+		if (!isAvailable())
+			return;
+		this.cacheResolver.publishKey(clz, key);
+	}
+
+	@Override
+	public boolean subscribeKey(KeyListener listener) {
+		return this.cacheResolver.subscribeKey(listener);
+	}
+
+	@Override
+	public boolean subscribeInvalidation(InvalidationListener listener) {
+		return this.cacheResolver.subscribeInvalidation(listener);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setUniqueKey(Class clz, String uniqueKey, String key) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.setUniqueKey(clz, uniqueKey, key);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String getUniqueKey(Class clz, String uniqueKey) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			String key = this.breaker.call(new Callable<String>() {
+				@Override
+				public String call() {
+					return cacheResolver.getUniqueKey(clz, uniqueKey);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return key;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultMapped(List<Class> clzList, String condition, byte[] value) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.setResultMapped(clzList, condition, value);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public byte[] getResultMapped(List<Class> clzList, String condition) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			byte[] value = this.breaker.call(new Callable<byte[]>() {
+				@Override
+				public byte[] call() {
+					return cacheResolver.getResultMapped(clzList, condition);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return value;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setMapList(Class clz, String key, List<Map<String, Object>> mapList) {
+		if (!isAvailable())
+			return;
+		long startNanos = System.nanoTime();
+		try {
+			this.cacheResolver.setMapList(clz, key, mapList);
+			this.breaker.onSuccess(startNanos);
+		} catch (Exception e) {
+			onWriteFailure(e);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List<Map<String, Object>> getMapList(Class clz, String key) {
+		if (!isAvailable())
+			return null;
+		long startNanos = System.nanoTime();
+		try {
+			List<Map<String, Object>> mapList = this.breaker.call(new Callable<List<Map<String, Object>>>() {
+				@Override
+				public List<Map<String, Object>> call() {
+					return cacheResolver.getMapList(clz, key);
+				}
+			});
+			this.breaker.onSuccess(startNanos);
+			return mapList;
+		} catch (Exception e) {
+			onReadFailure(e);
+			return null;
+		}
+	}
+
+	@Override
+	public String createCondition(Object obj) {
+		return this.cacheResolver.createCondition(obj);
+	}
+}
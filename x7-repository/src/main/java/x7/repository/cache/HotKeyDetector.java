@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * 热点key探测, Count-Min Sketch按时间窗口估算key的访问次数<br>
+ * 每个窗口结束时所有计数减半, 估算值是最近几个窗口访问次数的衰减和<br>
+ * 估算值达到阈值的key升为热点; 窗口结束时, 热点上个窗口累计不到阈值的降级<br>
+ * 计数不加锁, 并发只影响估算的精度<br>
+ * @author Sim
+ */
+public class HotKeyDetector {
+
+    private final static long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private final static int DEPTH = 4;
+    private final static int WIDTH = 1 << 14;
+
+    private final int[] table = new int[DEPTH * WIDTH];
+    private final int threshold;
+    private final long windowNanos;
+    private final int maxHotKeys;
+    private final AtomicLong nextAgingNanos;
+    private final Map<String, Boolean> hotKeyMap = new ConcurrentHashMap<>();
+    private final LongAdder promotion = new LongAdder();
+    private final LongAdder demotion = new LongAdder();
+
+    /**
+     * @param threshold 一个窗口内的访问次数
+     * @param windowMillis 窗口时长
+     * @param maxHotKeys 热点key的最大个数, 满了不再升级
+     */
+    public HotKeyDetector(int threshold, long windowMillis, int maxHotKeys) {
+        this.threshold = Math.max(threshold, 1);
+        this.windowNanos = Math.max(windowMillis, 1) * 1000000L;
+        this.maxHotKeys = Math.max(maxHotKeys, 1);
+        this.nextAgingNanos = new AtomicLong(System.nanoTime() + this.windowNanos);
+    }
+
+    /**
+     * 记录一次访问
+     * @return true: 是热点key
+     */
+    public boolean record(String key) {
+        age();
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            int count = table[index];
+            if (count < Integer.MAX_VALUE)
+                table[index] = ++count;
+            frequency = Math.min(frequency, count);
+        }
+        if (frequency < this.threshold)
+            return this.hotKeyMap.containsKey(key);
+        if (this.hotKeyMap.containsKey(key))
+            return true;
+        if (this.hotKeyMap.size() >= this.maxHotKeys)
+            return false;
+        if (this.hotKeyMap.putIfAbsent(key, Boolean.TRUE) == null)
+            this.promotion.increment();
+        return true;
+    }
+
+    public boolean isHot(String key) {
+        return this.hotKeyMap.containsKey(key);
+    }
+
+    public List<String> getHotKeyList() {
+        return new ArrayList<>(this.hotKeyMap.keySet());
+    }
+
+    public int getHotKeyCount() {
+        return this.hotKeyMap.size();
+    }
+
+    public long getPromotionCount() {
+        return this.promotion.sum();
+    }
+
+    public long getDemotionCount() {
+        return this.demotion.sum();
+    }
+
+    /**
+     * 窗口结束时, 只有一个线程减半计数, 并降级变冷的热点
+     */
+    private void age() {
+        long next = this.nextAgingNanos.get();
+        long now = System.nanoTime();
+        if (now - next < 0 || !this.nextAgingNanos.compareAndSet(next, now + this.windowNanos))
+            return;
+        for (String key : this.hotKeyMap.keySet()) {
+            if (frequency(key) < this.threshold && this.hotKeyMap.remove(key) != null)
+                this.demotion.increment();
+        }
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+    }
+
+    private int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, table[indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return i * WIDTH + (((int) hash) & (WIDTH - 1));
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
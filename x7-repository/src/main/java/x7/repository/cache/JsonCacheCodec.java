@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.util.JsonX;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 
+ * 默认编解码, 与原字符串JSON格式兼容
+ * @author sim
+ *
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+	private final static Logger logger = LoggerFactory.getLogger(JsonCacheCodec.class);
+
+	@Override
+	public byte[] encode(Object obj) {
+		return JsonX.toJson(obj).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public <T> T decode(byte[] bytes, Class<T> clz) {
+		try {
+			return JsonX.toObject(new String(bytes, StandardCharsets.UTF_8), clz);
+		}catch (Exception e) {
+			logger.warn("L2 Cache decode failed, " + clz.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+}
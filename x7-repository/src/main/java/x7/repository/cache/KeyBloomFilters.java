@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.bean.Parsed;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 
+ * 按实体类维护已存在key的布隆过滤器<br>
+ * 后台线程分批扫描全部key来构建, 构建完成前不拦截<br>
+ * 删除不会更新过滤器, 由定期重建清除<br>
+ * 新建key的广播有丢失时, 丢弃过滤器, 重新构建<br>
+ * @author sim
+ *
+ */
+public class KeyBloomFilters {
+
+	private final static Logger logger = LoggerFactory.getLogger(KeyBloomFilters.class);
+
+	private final static int SCAN_ROWS = 1000;
+	private final static long RETRY_MILLIS = 60000;
+
+	public interface KeyScanner {
+		/**
+		 * @param lastKey null: 从头开始
+		 * @return 按key升序, 大于lastKey的最多rows个key
+		 */
+		List<String> scan(Class clz, String lastKey, int rows);
+	}
+
+	private final KeyScanner scanner;
+	private final Map<Class, Holder> holderMap = new ConcurrentHashMap<>();
+
+	public KeyBloomFilters(KeyScanner scanner) {
+		this.scanner = scanner;
+	}
+
+	/**
+	 * @return false: 一定不存在
+	 */
+	public boolean mightContain(Class clz, Parsed parsed, String key) {
+		Holder holder = getHolder(clz);
+		if (holder.isStale(parsed.getBloomRebuildMinutes()))
+			rebuild(clz, parsed, holder);
+		BloomFilter filter = holder.filter;
+		return filter == null || filter.mightContain(key);
+	}
+
+	/**
+	 * 与构建完成时的替换互斥, 以免key只进了被丢弃的过滤器
+	 */
+	public void put(Class clz, String key) {
+		Holder holder = this.holderMap.get(clz);
+		if (holder == null)
+			return;
+		synchronized (holder) {
+			if (holder.filter != null)
+				holder.filter.put(key);
+			if (holder.building != null)
+				holder.building.put(key);
+		}
+	}
+
+	/**
+	 * 丢弃全部过滤器, 进行中的构建也作废
+	 */
+	public void reset() {
+		for (Holder holder : this.holderMap.values()) {
+			synchronized (holder) {
+				holder.filter = null;
+				holder.building = null;
+				holder.resetCount++;
+				holder.builtAt = 0;
+			}
+		}
+	}
+
+	private Holder getHolder(Class clz) {
+		Holder holder = this.holderMap.get(clz);
+		if (holder == null) {
+			holder = new Holder();
+			Holder existing = this.holderMap.putIfAbsent(clz, holder);
+			if (existing != null)
+				holder = existing;
+		}
+		return holder;
+	}
+
+	private void rebuild(final Class clz, final Parsed parsed, final Holder holder) {
+		if (!holder.isBuilding.compareAndSet(false, true))
+			return;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long startTime = System.currentTimeMillis();
+				int resetCount;
+				try {
+					BloomFilter building = new BloomFilter(parsed.getBloomExpectedSize(), parsed.getBloomFpp());
+					synchronized (holder) {
+						holder.building = building;
+						resetCount = holder.resetCount;
+					}
+					int count = 0;
+					String lastKey = null;
+					while (true) {
+						List<String> keyList = scanner.scan(clz, lastKey, SCAN_ROWS);
+						for (String key : keyList) {
+							building.put(key);
+						}
+						count += keyList.size();
+						if (keyList.size() < SCAN_ROWS)
+							break;
+						lastKey = keyList.get(keyList.size() - 1);
+					}
+					synchronized (holder) {
+						if (resetCount != holder.resetCount)
+							return;
+						holder.filter = building;
+						holder.building = null;
+						holder.builtAt = System.currentTimeMillis();
+					}
+					logger.info("Bloom filter of " + clz.getName() + " built, keys = " + count + ", cost time = " + (System.currentTimeMillis() - startTime) + "ms");
+				} catch (Exception e) {
+					logger.error("Bloom filter of " + clz.getName() + " build failed: " + e.getMessage());
+					holder.failedAt = System.currentTimeMillis();
+				} finally {
+					synchronized (holder) {
+						holder.building = null;
+					}
+					holder.isBuilding.set(false);
+				}
+			}
+		}, "x7-bloom-" + clz.getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static class Holder {
+		private volatile BloomFilter filter;
+		private volatile BloomFilter building;
+		private volatile long builtAt;
+		private volatile long failedAt;
+		private int resetCount;
+		private final AtomicBoolean isBuilding = new AtomicBoolean();
+
+		private boolean isStale(int rebuildMinutes) {
+			if (this.isBuilding.get())
+				return false;
+			if (System.currentTimeMillis() - this.failedAt < RETRY_MILLIS)
+				return false;
+			if (this.builtAt == 0)
+				return true;
+			return rebuildMinutes > 0 && System.currentTimeMillis() - this.builtAt > rebuildMinutes * 60000L;
+		}
+	}
+}
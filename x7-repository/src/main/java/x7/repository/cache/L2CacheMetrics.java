@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * 二级缓存的统计, 按实体类和操作分开<br>
+ * 仓库操作: get, list, find, in, getOne, resultMapped, reduce, 记录命中, 未命中, 部分命中, 补齐的对象数<br>
+ * redis操作: redis.get, redis.mget, redis.query, redis.eval, redis.set, 记录耗时和字节数<br>
+ * 失效: invalidate<br>
+ * 热点key: hotKey记录热点副本的命中, 另有当前热点key, 升级和降级次数<br>
+ * 可直接读取getStatsList(), 也可绑定到Micrometer<br>
+ * @author sim
+ *
+ */
+public class L2CacheMetrics {
+
+	public final static String GET = "get";
+	public final static String LIST = "list";
+	public final static String FIND = "find";
+	public final static String IN = "in";
+	public final static String GET_ONE = "getOne";
+	public final static String RESULT_MAPPED = "resultMapped";
+	public final static String REDUCE = "reduce";
+	public final static String INVALIDATE = "invalidate";
+	public final static String HOT_KEY = "hotKey";
+	public final static String REDIS_GET = "redis.get";
+	public final static String REDIS_MGET = "redis.mget";
+	public final static String REDIS_QUERY = "redis.query";
+	public final static String REDIS_EVAL = "redis.eval";
+	public final static String REDIS_SET = "redis.set";
+
+	/**
+	 * redis耗时直方图的上界, 微秒
+	 */
+	private final static long[] LATENCY_BOUNDS_MICROS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 1000000};
+
+	public interface Listener {
+		/**
+		 * 第一次出现某个实体类的某个操作时
+		 */
+		void onStats(Stats stats);
+	}
+
+	private static L2CacheMetrics instance;
+
+	public static L2CacheMetrics getInstance() {
+		if (instance == null) {
+			instance = new L2CacheMetrics();
+		}
+		return instance;
+	}
+
+	private final Map<Class, Map<String, Stats>> statsMap = new ConcurrentHashMap<>();
+	private volatile Listener listener;
+	private volatile HotKeyDetector hotKeyDetector;
+
+	private L2CacheMetrics(){}
+
+	public static long[] getLatencyBoundsMicros() {
+		return LATENCY_BOUNDS_MICROS.clone();
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+		this.hotKeyDetector = hotKeyDetector;
+	}
+
+	/**
+	 * 本节点当前的热点key, 没有开启时为空
+	 */
+	public List<String> getHotKeyList() {
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		return hotKeyDetector == null ? new ArrayList<String>() : hotKeyDetector.getHotKeyList();
+	}
+
+	public int getHotKeyCount() {
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		return hotKeyDetector == null ? 0 : hotKeyDetector.getHotKeyCount();
+	}
+
+	public long getHotKeyPromotionCount() {
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		return hotKeyDetector == null ? 0 : hotKeyDetector.getPromotionCount();
+	}
+
+	public long getHotKeyDemotionCount() {
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		return hotKeyDetector == null ? 0 : hotKeyDetector.getDemotionCount();
+	}
+
+	public List<Stats> getStatsList() {
+		List<Stats> list = new ArrayList<>();
+		for (Map<String, Stats> map : this.statsMap.values()) {
+			list.addAll(map.values());
+		}
+		return list;
+	}
+
+	public Stats getStats(Class clz, String op) {
+		Map<String, Stats> map = this.statsMap.get(clz);
+		if (map == null) {
+			map = new ConcurrentHashMap<>();
+			Map<String, Stats> existing = this.statsMap.putIfAbsent(clz, map);
+			if (existing != null)
+				map = existing;
+		}
+		Stats stats = map.get(op);
+		if (stats == null) {
+			stats = new Stats(clz.getName(), op);
+			Stats existing = map.putIfAbsent(op, stats);
+			if (existing != null)
+				return existing;
+			Listener listener = this.listener;
+			if (listener != null)
+				listener.onStats(stats);
+		}
+		return stats;
+	}
+
+	public void hit(Class clz, String op) {
+		getStats(clz, op).hit.increment();
+	}
+
+	public void hit(Class clz, String op, int count) {
+		getStats(clz, op).hit.add(count);
+	}
+
+	public void miss(Class clz, String op) {
+		getStats(clz, op).miss.increment();
+	}
+
+	/**
+	 * 结果Key列表命中, 但有对象不在缓存中
+	 * @param rehydrated 要回库补齐的对象数
+	 */
+	public void partialHit(Class clz, String op, int rehydrated) {
+		Stats stats = getStats(clz, op);
+		stats.partialHit.increment();
+		stats.rehydration.add(rehydrated);
+	}
+
+	public void invalidate(Class clz) {
+		getStats(clz, INVALIDATE).invalidation.increment();
+	}
+
+	/**
+	 * @param startNanos System.nanoTime(), 调用redis之前
+	 * @param bytes 读写的字节数
+	 */
+	public void redis(Class clz, String op, long startNanos, long bytes) {
+		getStats(clz, op).record(System.nanoTime() - startNanos, bytes);
+	}
+
+	public static class Stats {
+
+		private final String clzName;
+		private final String op;
+		private final LongAdder hit = new LongAdder();
+		private final LongAdder miss = new LongAdder();
+		private final LongAdder partialHit = new LongAdder();
+		private final LongAdder rehydration = new LongAdder();
+		private final LongAdder invalidation = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder redisCount = new LongAdder();
+		private final LongAdder redisNanos = new LongAdder();
+		private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BOUNDS_MICROS.length + 1];
+
+		private Stats(String clzName, String op) {
+			this.clzName = clzName;
+			this.op = op;
+			for (int i = 0; i < latencyBuckets.length; i++) {
+				latencyBuckets[i] = new LongAdder();
+			}
+		}
+
+		private void record(long nanos, long bytes) {
+			this.redisCount.increment();
+			this.redisNanos.add(nanos);
+			this.bytes.add(bytes);
+			long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+			int i = 0;
+			while (i < LATENCY_BOUNDS_MICROS.length && micros > LATENCY_BOUNDS_MICROS[i]) {
+				i++;
+			}
+			this.latencyBuckets[i].increment();
+		}
+
+		public String getClzName() {
+			return clzName;
+		}
+
+		public String getOp() {
+			return op;
+		}
+
+		public long getHitCount() {
+			return hit.sum();
+		}
+
+		public long getMissCount() {
+			return miss.sum();
+		}
+
+		public long getPartialHitCount() {
+			return partialHit.sum();
+		}
+
+		public long getRehydrationCount() {
+			return rehydration.sum();
+		}
+
+		public long getInvalidationCount() {
+			return invalidation.sum();
+		}
+
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		public long getRedisCount() {
+			return redisCount.sum();
+		}
+
+		public long getRedisNanos() {
+			return redisNanos.sum();
+		}
+
+		/**
+		 * 耗时不超过getLatencyBoundsMicros()[index]的次数, 累计<br>
+		 * index等于上界个数时, 即总次数
+		 */
+		public long getLatencyCount(int index) {
+			long count = 0;
+			for (int i = 0; i <= index && i < latencyBuckets.length; i++) {
+				count += latencyBuckets[i].sum();
+			}
+			return count;
+		}
+
+		/**
+		 * 命中率, 部分命中算命中
+		 */
+		public double getHitRatio() {
+			long hit = getHitCount() + getPartialHitCount();
+			long total = hit + getMissCount();
+			return total == 0 ? 0 : (double) hit / total;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{" +
+					"clz=" + clzName +
+					", op=" + op +
+					", hit=" + getHitCount() +
+					", miss=" + getMissCount() +
+					", partialHit=" + getPartialHitCount() +
+					", rehydration=" + getRehydrationCount() +
+					", invalidation=" + getInvalidationCount() +
+					", bytes=" + getBytes() +
+					", redisCount=" + getRedisCount() +
+					", redisNanos=" + getRedisNanos() +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
+import x7.core.repository.CacheResolver;
+import x7.core.web.Page;
+import x7.repository.mapper.BeanCopier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * 进程内的缓存, 不依赖redis, 适合单节点部署<br>
+ * 与LevelTwoCacheResolver相同, 实体按代数(generation), 查询按命名空间(ns)失效<br>
+ * 对象不做序列化, 存入和取出时按getter/setter各复制一次(BeanCopier), 调用方修改不影响缓存<br>
+ * Key列表和分页每次返回副本<br>
+ * @author sim
+ *
+ */
+public class LocalCacheResolver implements CacheResolver {
+
+	private final static Logger logger = LoggerFactory.getLogger(LocalCacheResolver.class);
+
+	private final static Object NULL_VALUE = new Object();
+	private final static String UNIQUE = "uk.";
+
+	private static LocalCacheResolver instance;
+
+	public static LocalCacheResolver getInstance() {
+		if (instance == null) {
+			instance = new LocalCacheResolver();
+		}
+		return instance;
+	}
+
+	private NearCache<Object> store;
+	private final Map<String, AtomicLong> generationMap = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> nsMap = new ConcurrentHashMap<>();
+	private int validSecond = 60;
+	private int nullValidSecond = 10;
+
+	private LocalCacheResolver() {
+		setMaxSize(100000);
+	}
+
+	/**
+	 * 最大条数, Key列表和分页按其中的key数折算
+	 */
+	public void setMaxSize(int maxSize) {
+		this.store = new NearCache<>(maxSize, maxSize, this.validSecond, new NearCache.Weigher<Object>() {
+			@Override
+			public int weigh(Object value) {
+				if (value instanceof List)
+					return 1 + ((List) value).size() / 16;
+				if (value instanceof Page)
+					return 1 + ((Page) value).getKeyList().size() / 16;
+				if (value instanceof byte[])
+					return 1 + ((byte[]) value).length / 1024;
+				return 1;
+			}
+		});
+		logger.info("L2 Cache local, maxSize = " + maxSize);
+	}
+
+	public void setValidSecond(int validSecond) {
+		this.validSecond = validSecond;
+	}
+
+	public void setNullValidSecond(int nullValidSecond) {
+		this.nullValidSecond = nullValidSecond;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private int getValidSecondAdjusted(Class clz) {
+		Parsed parsed = Parser.get(clz);
+		int validSecond = parsed.getCacheTimeSeconds() > 0 ? parsed.getCacheTimeSeconds() : this.validSecond;
+		int jitterSecond = parsed.getCacheJitterSeconds();
+		if (jitterSecond > 0)
+			validSecond += ThreadLocalRandom.current().nextInt(jitterSecond + 1);
+		return validSecond;
+	}
+
+	private AtomicLong version(Map<String, AtomicLong> map, String clzName) {
+		AtomicLong version = map.get(clzName);
+		if (version == null) {
+			version = new AtomicLong();
+			AtomicLong existing = map.putIfAbsent(clzName, version);
+			if (existing != null)
+				version = existing;
+		}
+		return version;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private String getSimpleKey(Class clz, String key) {
+		String clzName = clz.getName();
+		return "{" + clzName + "}.g" + version(this.generationMap, clzName).get() + "." + key;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private String getKey(Class clz, Object conditionObj) {
+		String clzName = clz.getName();
+		return "{" + clzName + "}.n" + version(this.nsMap, clzName).get() + "." + createCondition(conditionObj);
+	}
+
+	/**
+	 * 命名空间取依赖的所有类
+	 */
+	@SuppressWarnings("rawtypes")
+	private String getResultMappedKey(List<Class> clzList, String condition) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{").append(clzList.get(0).getName()).append("}.m");
+		for (Class clz : clzList) {
+			sb.append(version(this.nsMap, clz.getName()).get()).append(".");
+		}
+		return sb.append(condition).toString();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String markForRefresh(Class clz) {
+		return String.valueOf(version(this.nsMap, clz.getName()).incrementAndGet());
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, String key) {
+		this.store.invalidate(getSimpleKey(clz, key));
+	}
+
+	/**
+	 * 只递增实体代数, 旧代数下的对象由淘汰或过期清除
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz) {
+		version(this.generationMap, clz.getName()).incrementAndGet();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, String key, Object obj) {
+		int validSecond = obj == null ? this.nullValidSecond : getValidSecondAdjusted(clz);
+		this.store.put(getSimpleKey(clz, key), obj == null ? NULL_VALUE : copyOf(obj), this.store.epoch(), validSecond);
+	}
+
+	@Override
+	public <T> T get(Class<T> clz, String key) {
+		Object obj = this.store.get(getSimpleKey(clz, key));
+		if (obj == null || obj == NULL_VALUE)
+			return null;
+		return copyOf((T) obj);
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key) {
+		Object obj = this.store.get(getSimpleKey(clz, key));
+		if (obj == null)
+			return null;
+		if (obj == NULL_VALUE)
+			return Optional.empty();
+		return Optional.of(copyOf((T) obj));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T copyOf(T obj) {
+		return BeanCopier.get((Class<T>) obj.getClass()).copy(obj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultKeyList(Class clz, Object conditionObj, List<String> keyList) {
+		this.store.put(getKey(clz, conditionObj), new ArrayList<>(keyList), this.store.epoch(), getValidSecondAdjusted(clz));
+	}
+
+	@Override
+	public <T> void setResultKeyListPaginated(Class<T> clz, Object conditionObj, Page<T> pagination) {
+		this.store.put(getKey(clz, conditionObj), copyOf(pagination), this.store.epoch(), getValidSecondAdjusted(clz));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public List<String> getResultKeyList(Class clz, Object conditionObj) {
+		List<String> keyList = (List<String>) this.store.get(getKey(clz, conditionObj));
+		if (keyList == null)
+			return new ArrayList<String>();
+		return new ArrayList<>(keyList);
+	}
+
+	@Override
+	public <T> Page<T> getResultKeyListPaginated(Class<T> clz, Object conditionObj) {
+		Page<T> p = (Page<T>) this.store.get(getKey(clz, conditionObj));
+		if (p == null)
+			return null;
+		return copyOf(p);
+	}
+
+	@Override
+	public <T> List<T> list(Class<T> clz, List<String> keyList) {
+		List<T> list = new ArrayList<T>();
+		if (keyList == null)
+			return list;
+		for (String key : keyList) {
+			T t = get(clz, key);
+			if (t != null)
+				list.add(t);
+		}
+		return list;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setUniqueKey(Class clz, String uniqueKey, String key) {
+		this.store.put(getSimpleKey(clz, UNIQUE + uniqueKey), key, this.store.epoch(), getValidSecondAdjusted(clz));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String getUniqueKey(Class clz, String uniqueKey) {
+		return (String) this.store.get(getSimpleKey(clz, UNIQUE + uniqueKey));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultMapped(List<Class> clzList, String condition, byte[] value) {
+		this.store.put(getResultMappedKey(clzList, condition), value, this.store.epoch(), getValidSecondAdjusted(clzList.get(0)));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public byte[] getResultMapped(List<Class> clzList, String condition) {
+		return (byte[]) this.store.get(getResultMappedKey(clzList, condition));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setMapList(Class clz, String key, List<Map<String, Object>> mapList) {
+		this.store.put(getSimpleKey(clz, key), new ArrayList<>(mapList), this.store.epoch(), getValidSecondAdjusted(clz));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public List<Map<String, Object>> getMapList(Class clz, String key) {
+		Collection<Map<String, Object>> mapList = (Collection<Map<String, Object>>) this.store.get(getSimpleKey(clz, key));
+		if (mapList == null)
+			return null;
+		return new ArrayList<>(mapList);
+	}
+
+	/**
+	 * 只复制分页信息和key列表, 不含对象
+	 */
+	private <T> Page<T> copyOf(Page<T> p) {
+		Page<T> copy = new Page<>();
+		copy.setScroll(p.isScroll());
+		copy.setPage(p.getPage());
+		copy.setRows(p.getRows());
+		copy.setTotalRows(p.getTotalRows());
+		copy.setSortList(p.getSortList());
+		copy.setTag(p.getTag());
+		copy.setKeyList(p.getKeyList() == null ? new ArrayList<String>() : new ArrayList<>(p.getKeyList()));
+		return copy;
+	}
+}
@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
+import x7.core.repository.CacheResolver;
+import x7.core.repository.X;
+import x7.core.web.Page;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 
+ * 在另一个CacheResolver前面加一层内存映射文件, 只对@X.Cache(offHeap = true)的实体类生效<br>
+ * 读对象先查文件, 未命中再查后面的缓存, 查到后写入文件<br>
+ * 本节点的写操作同时失效文件里的对象; 其他节点的写, 由失效消息删除文件里的对象<br>
+ * 消息丢失时清空文件; 订阅不可用时, 要等文件里的对象过期<br>
+ * 适合很少修改的大量参考数据(字典, SKU等), 重启后不用回库预热<br>
+ * 查询的Key列表和分页不进文件<br>
+ * @author sim
+ *
+ */
+public class MappedCacheResolver implements CacheResolver {
+
+	private final static Logger logger = LoggerFactory.getLogger(MappedCacheResolver.class);
+
+	private final CacheResolver cacheResolver;
+	private final File dir;
+	private final int capacityMB;
+	private final int timeSeconds;
+	private CacheCodec codec = new JsonCacheCodec();
+	private final Map<Class, MappedCacheStore> storeMap = new ConcurrentHashMap<>();
+	private volatile InvalidationListener invalidationListener;
+	private final boolean isInvalidationSubscribed;
+
+	/**
+	 * @param cacheResolver 后面的缓存
+	 * @param dir 文件目录, 每个实体类一个文件
+	 * @param capacityMB 每个文件的大小
+	 * @param timeSeconds @X.Cache没有设置时间时, 文件里对象的过期时间
+	 */
+	public MappedCacheResolver(CacheResolver cacheResolver, String dir, int capacityMB, int timeSeconds) {
+		this.cacheResolver = cacheResolver;
+		this.dir = new File(dir);
+		this.capacityMB = capacityMB;
+		this.timeSeconds = timeSeconds;
+		logger.info("L2 Cache mapped file tier, dir = " + this.dir.getAbsolutePath() + ", capacity = " + capacityMB + "MB");
+		this.isInvalidationSubscribed = cacheResolver.subscribeInvalidation(new InvalidationListener() {
+			@Override
+			public void onRemove(String clzName, String key) {
+				MappedCacheStore store = getOpenedStore(clzName);
+				if (store != null)
+					store.remove(key);
+				InvalidationListener listener = invalidationListener;
+				if (listener != null)
+					listener.onRemove(clzName, key);
+			}
+
+			@Override
+			public void onClear(String clzName) {
+				MappedCacheStore store = getOpenedStore(clzName);
+				if (store != null)
+					store.clear();
+				InvalidationListener listener = invalidationListener;
+				if (listener != null)
+					listener.onClear(clzName);
+			}
+
+			@Override
+			public void onGap() {
+				for (MappedCacheStore store : storeMap.values()) {
+					store.clear();
+				}
+				InvalidationListener listener = invalidationListener;
+				if (listener != null)
+					listener.onGap();
+			}
+		});
+		if (!this.isInvalidationSubscribed)
+			logger.warn("L2 Cache mapped file tier can not subscribe invalidation, the writes of other nodes wait for expiration");
+	}
+
+	/**
+	 * @return null: 没有打开过
+	 */
+	private MappedCacheStore getOpenedStore(String clzName) {
+		for (Map.Entry<Class, MappedCacheStore> entry : this.storeMap.entrySet()) {
+			if (entry.getKey().getName().equals(clzName))
+				return entry.getValue();
+		}
+		return null;
+	}
+
+	/**
+	 * 编码变化后, 旧文件会被清空
+	 */
+	public void setCodec(CacheCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * @return null: 不进文件
+	 */
+	@SuppressWarnings("rawtypes")
+	private MappedCacheStore getStore(Class clz) {
+		Parsed parsed = Parser.get(clz);
+		if (!parsed.isCacheOffHeap())
+			return null;
+		MappedCacheStore store = this.storeMap.get(clz);
+		if (store != null)
+			return store;
+		synchronized (this.storeMap) {
+			store = this.storeMap.get(clz);
+			if (store == null) {
+				try {
+					store = new MappedCacheStore(new File(this.dir, clz.getName() + ".x7c"), this.capacityMB, this.codec.getClass().getName().hashCode());
+				} catch (Exception e) {
+					logger.error("L2 Cache mapped file of " + clz.getName() + " can not be opened: " + e.getMessage());
+					return null;
+				}
+				this.storeMap.put(clz, store);
+			}
+		}
+		return store;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private int getTimeSeconds(Class clz) {
+		int timeSeconds = Parser.get(clz).getCacheTimeSeconds();
+		return timeSeconds > 0 ? timeSeconds : this.timeSeconds;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void putMapped(MappedCacheStore store, Class clz, String key, Object obj) {
+		if (obj == null) {
+			store.remove(key);
+			return;
+		}
+		store.put(key, this.codec.encode(obj), getTimeSeconds(clz));
+	}
+
+	private <T> T getMapped(MappedCacheStore store, Class<T> clz, String key) {
+		byte[] bytes = store.get(key);
+		if (bytes == null)
+			return null;
+		return this.codec.decode(bytes, clz);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String markForRefresh(Class clz) {
+		return this.cacheResolver.markForRefresh(clz);
+	}
+
+	@Override
+	public boolean isDependencyTracking() {
+		return this.cacheResolver.isDependencyTracking();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForCreate(Class clz, Object obj) {
+		this.cacheResolver.markForCreate(clz, obj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRefresh(Class clz, Collection<String> propertyList) {
+		this.cacheResolver.markForRefresh(clz, propertyList);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, String key) {
+		this.cacheResolver.markForRemove(clz, key);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, List<String> keyList) {
+		this.cacheResolver.markForRemove(clz, keyList);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, String key) {
+		MappedCacheStore store = getStore(clz);
+		if (store != null)
+			store.remove(key);
+		this.cacheResolver.remove(clz, key);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, List<String> keyList) {
+		MappedCacheStore store = getStore(clz);
+		if (store != null) {
+			for (String key : keyList) {
+				store.remove(key);
+			}
+		}
+		this.cacheResolver.remove(clz, keyList);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz) {
+		MappedCacheStore store = getStore(clz);
+		if (store != null)
+			store.clear();
+		this.cacheResolver.remove(clz);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, String key, Object obj) {
+		this.cacheResolver.set(clz, key, obj);
+		MappedCacheStore store = getStore(clz);
+		if (store != null)
+			putMapped(store, clz, key, obj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, Map<String, ? extends Object> objMap) {
+		this.cacheResolver.set(clz, objMap);
+		MappedCacheStore store = getStore(clz);
+		if (store == null)
+			return;
+		for (Map.Entry<String, ? extends Object> entry : objMap.entrySet()) {
+			putMapped(store, clz, entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public <T> T get(Class<T> clz, String key) {
+		MappedCacheStore store = getStore(clz);
+		if (store == null)
+			return this.cacheResolver.get(clz, key);
+		T t = getMapped(store, clz, key);
+		if (t != null)
+			return t;
+		t = this.cacheResolver.get(clz, key);
+		if (t != null)
+			putMapped(store, clz, key, t);
+		return t;
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key) {
+		MappedCacheStore store = getStore(clz);
+		if (store == null)
+			return this.cacheResolver.getNullable(clz, key);
+		T t = getMapped(store, clz, key);
+		if (t != null)
+			return Optional.of(t);
+		Optional<T> optional = this.cacheResolver.getNullable(clz, key);
+		if (optional != null && optional.isPresent())
+			putMapped(store, clz, key, optional.get());
+		return optional;
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key, int refreshAheadSeconds, Runnable reloader) {
+		MappedCacheStore store = getStore(clz);
+		if (store == null)
+			return this.cacheResolver.getNullable(clz, key, refreshAheadSeconds, reloader);
+		T t = getMapped(store, clz, key);
+		if (t != null)
+			return Optional.of(t);
+		Optional<T> optional = this.cacheResolver.getNullable(clz, key, refreshAheadSeconds, reloader);
+		if (optional != null && optional.isPresent())
+			putMapped(store, clz, key, optional.get());
+		return optional;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultKeyList(Class clz, Object conditionObj, List<String> keyList) {
+		this.cacheResolver.setResultKeyList(clz, conditionObj, keyList);
+	}
+
+	@Override
+	public <T> void setResultKeyListPaginated(Class<T> clz, Object conditionObj, Page<T> pagination) {
+		this.cacheResolver.setResultKeyListPaginated(clz, conditionObj, pagination);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List<String> getResultKeyList(Class clz, Object conditionObj) {
+		return this.cacheResolver.getResultKeyList(clz, conditionObj);
+	}
+
+	@Override
+	public <T> Page<T> getResultKeyListPaginated(Class<T> clz, Object conditionObj) {
+		return this.cacheResolver.getResultKeyListPaginated(clz, conditionObj);
+	}
+
+	/**
+	 * 文件里没有的, 一次从后面的缓存批量查, 结果按keyList的顺序
+	 */
+	@Override
+	public <T> List<T> list(Class<T> clz, List<String> keyList) {
+		MappedCacheStore store = getStore(clz);
+		Field field = Parser.get(clz).getKeyField(X.KEY_ONE);
+		if (store == null || field == null)
+			return this.cacheResolver.list(clz, keyList);
+
+		List<T> list = new ArrayList<>(keyList.size());
+		List<String> missedKeyList = new ArrayList<>();
+		for (String key : keyList) {
+			T t = getMapped(store, clz, key);
+			list.add(t);
+			if (t == null)
+				missedKeyList.add(key);
+		}
+		if (!missedKeyList.isEmpty()) {
+			Map<String, T> missedMap = new HashMap<>();
+			List<T> missedList = this.cacheResolver.list(clz, missedKeyList);
+			for (T t : missedList == null ? new ArrayList<T>() : missedList) {
+				try {
+					String key = String.valueOf(field.get(t));
+					missedMap.put(key, t);
+					putMapped(store, clz, key, t);
+				} catch (IllegalAccessException e) {
+					logger.error("L2 Cache mapped file can not read key of " + clz.getName() + ": " + e.getMessage());
+				}
+			}
+			for (int i = 0, size = keyList.size(); i < size; i++) {
+				if (list.get(i) == null)
+					list.set(i, missedMap.get(keyList.get(i)));
+			}
+		}
+
+		List<T> resultList = new ArrayList<>(list.size());
+		for (T t : list) {
+			if (t != null)
+				resultList.add(t);
+		}
+		return resultList;
+	}
+
+	/**
+	 * 实体类进文件时, 不用后面缓存的合并查询, 以便对象从文件读
+	 */
+	@Override
+	public <T> List<T> listByResultKey(Class<T> clz, Object conditionObj, List<String> keyList) {
+		if (getStore(clz) == null)
+			return this.cacheResolver.listByResultKey(clz, conditionObj, keyList);
+		return CacheResolver.super.listByResultKey(clz, conditionObj, keyList);
+	}
+
+	@Override
+	public <T> Page<T> findByResultKey(Class<T> clz, Object conditionObj) {
+		if (getStore(clz) == null)
+			return this.cacheResolver.findByResultKey(clz, conditionObj);
+		return CacheResolver.super.findByResultKey(clz, conditionObj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean tryLease(Class clz, Object conditionObj, long millis) {
+		return this.cacheResolver.tryLease(clz, conditionObj, millis);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void releaseLease(Class clz, Object conditionObj) {
+		this.cacheResolver.releaseLease(clz, conditionObj);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void publishKey(Class clz, String key) {
+		this.cacheResolver.publishKey(clz, key);
+	}
+
+	@Override
+	public boolean subscribeKey(KeyListener listener) {
+		return this.cacheResolver.subscribeKey(listener);
+	}
+
+	/**
+	 * 文件层已订阅, 外层的监听由文件层转发
+	 */
+	@Override
+	public boolean subscribeInvalidation(InvalidationListener listener) {
+		this.invalidationListener = listener;
+		return this.isInvalidationSubscribed;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setUniqueKey(Class clz, String uniqueKey, String key) {
+		this.cacheResolver.setUniqueKey(clz, uniqueKey, key);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String getUniqueKey(Class clz, String uniqueKey) {
+		return this.cacheResolver.getUniqueKey(clz, uniqueKey);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultMapped(List<Class> clzList, String condition, byte[] value) {
+		this.cacheResolver.setResultMapped(clzList, condition, value);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public byte[] getResultMapped(List<Class> clzList, String condition) {
+		return this.cacheResolver.getResultMapped(clzList, condition);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setMapList(Class clz, String key, List<Map<String, Object>> mapList) {
+		this.cacheResolver.setMapList(clz, key, mapList);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List<Map<String, Object>> getMapList(Class clz, String key) {
+		return this.cacheResolver.getMapList(clz, key);
+	}
+
+	@Override
+	public String createCondition(Object obj) {
+		return this.cacheResolver.createCondition(obj);
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 
+ * 一个实体类的堆外缓存, 数据在内存映射文件里, 进程重启后仍可用<br>
+ * 文件头: magic(4) version(4) fingerprint(8) writePosition(8) reserved(8)<br>
+ * 记录顺序追加: length(4) state(1) expireAt(8) keyLength(2) key value<br>
+ * 覆盖和删除只把旧记录标记为删除; 文件写满时清空重来<br>
+ * 堆内只有key的64位hash到记录位置的索引, 两个long数组, 没有每条数据的对象<br>
+ * 打开时独占文件锁, 同一个文件只能被一个进程使用<br>
+ * @author sim
+ *
+ */
+public class MappedCacheStore {
+
+	private final static Logger logger = LoggerFactory.getLogger(MappedCacheStore.class);
+
+	private final static int MAGIC = 0x58374D43;
+	private final static int VERSION = 1;
+	private final static int HEADER_SIZE = 32;
+	private final static int POSITION_OFFSET = 16;
+	private final static int RECORD_HEADER_SIZE = 4 + 1 + 8 + 2;
+	private final static byte LIVE = 0;
+	private final static byte DELETED = 1;
+
+	private final String name;
+	private final long fingerprint;
+	private final MappedByteBuffer buffer;
+	private final RandomAccessFile raf;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int writePosition;
+	private long[] hashes;
+	private int[] offsets;
+	private int size;
+
+	/**
+	 * @param file 不存在时创建
+	 * @param capacityMB 文件大小, 不超过2047
+	 * @param fingerprint 编码方式的标识, 与文件里的不同时清空
+	 * @throws IOException 文件被其他进程锁定
+	 */
+	public MappedCacheStore(File file, int capacityMB, long fingerprint) throws IOException {
+		this.name = file.getName();
+		this.fingerprint = fingerprint;
+		long capacity = Math.min(capacityMB, 2047) * 1024L * 1024L;
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists())
+			dir.mkdirs();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			FileLock fileLock;
+			try {
+				fileLock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				fileLock = null;
+			}
+			if (fileLock == null)
+				throw new IOException(file.getName() + " is locked by another process");
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+		this.raf = raf;
+		load();
+	}
+
+	/**
+	 * 读取文件头, 顺序扫描记录, 重建索引, 跳过删除和过期的
+	 */
+	private void load() {
+		resetIndex(1024);
+		if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION || this.buffer.getLong(8) != this.fingerprint) {
+			reset();
+			return;
+		}
+		long position = this.buffer.getLong(POSITION_OFFSET);
+		if (position < HEADER_SIZE || position > this.buffer.capacity()) {
+			reset();
+			return;
+		}
+		this.writePosition = (int) position;
+
+		long now = System.currentTimeMillis();
+		int offset = HEADER_SIZE;
+		while (offset < this.writePosition) {
+			int length = this.buffer.getInt(offset);
+			if (length < RECORD_HEADER_SIZE || offset + length > this.writePosition) {
+				logger.error("L2 Cache mapped file " + this.name + " is broken at " + offset + ", truncated");
+				this.writePosition = offset;
+				this.buffer.putLong(POSITION_OFFSET, offset);
+				break;
+			}
+			if (this.buffer.get(offset + 4) == LIVE) {
+				if (this.buffer.getLong(offset + 5) > now) {
+					byte[] key = readKey(offset);
+					long hash = hash(key);
+					int old = find(hash, key);
+					if (old > 0) {
+						this.buffer.put(old + 4, DELETED);
+						removeIndex(hash, old);
+					}
+					putIndex(hash, offset);
+				} else {
+					this.buffer.put(offset + 4, DELETED);
+				}
+			}
+			offset += length;
+		}
+		logger.info("L2 Cache mapped file " + this.name + " loaded, size = " + this.size + ", used = " + this.writePosition + " bytes");
+	}
+
+	private void reset() {
+		this.buffer.putInt(0, MAGIC);
+		this.buffer.putInt(4, VERSION);
+		this.buffer.putLong(8, this.fingerprint);
+		this.buffer.putLong(POSITION_OFFSET, HEADER_SIZE);
+		this.writePosition = HEADER_SIZE;
+		resetIndex(1024);
+	}
+
+	/**
+	 * @return null: 不存在或已过期
+	 */
+	public byte[] get(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		this.lock.readLock().lock();
+		try {
+			int offset = find(hash(keyBytes), keyBytes);
+			if (offset <= 0)
+				return null;
+			if (this.buffer.getLong(offset + 5) <= System.currentTimeMillis())
+				return null;
+			int length = this.buffer.getInt(offset);
+			int valueOffset = offset + RECORD_HEADER_SIZE + keyBytes.length;
+			byte[] value = new byte[offset + length - valueOffset];
+			ByteBuffer duplicate = this.buffer.duplicate();
+			duplicate.position(valueOffset);
+			duplicate.get(value);
+			return value;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public void put(String key, byte[] value, int timeSeconds) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (keyBytes.length > Short.MAX_VALUE)
+			return;
+		int length = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+		if (length > this.buffer.capacity() - HEADER_SIZE)
+			return;
+		long hash = hash(keyBytes);
+		this.lock.writeLock().lock();
+		try {
+			if (this.writePosition + length > this.buffer.capacity()) {
+				logger.info("L2 Cache mapped file " + this.name + " is full, cleared");
+				reset();
+			}
+			int old = find(hash, keyBytes);
+			if (old > 0) {
+				this.buffer.put(old + 4, DELETED);
+				removeIndex(hash, old);
+			}
+			int offset = this.writePosition;
+			ByteBuffer duplicate = this.buffer.duplicate();
+			duplicate.position(offset);
+			duplicate.putInt(length);
+			duplicate.put(LIVE);
+			duplicate.putLong(System.currentTimeMillis() + timeSeconds * 1000L);
+			duplicate.putShort((short) keyBytes.length);
+			duplicate.put(keyBytes);
+			duplicate.put(value);
+			this.writePosition = offset + length;
+			this.buffer.putLong(POSITION_OFFSET, this.writePosition);
+			putIndex(hash, offset);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		long hash = hash(keyBytes);
+		this.lock.writeLock().lock();
+		try {
+			int offset = find(hash, keyBytes);
+			if (offset > 0) {
+				this.buffer.put(offset + 4, DELETED);
+				removeIndex(hash, offset);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public void clear() {
+		this.lock.writeLock().lock();
+		try {
+			reset();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 释放文件锁, 之后不能再使用
+	 */
+	public void close() {
+		this.lock.writeLock().lock();
+		try {
+			this.buffer.force();
+			this.raf.close();
+		} catch (IOException e) {
+			logger.error("L2 Cache mapped file " + this.name + " close failed: " + e.getMessage());
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private byte[] readKey(int offset) {
+		byte[] key = new byte[this.buffer.getShort(offset + 13)];
+		ByteBuffer duplicate = this.buffer.duplicate();
+		duplicate.position(offset + RECORD_HEADER_SIZE);
+		duplicate.get(key);
+		return key;
+	}
+
+	private boolean keyEquals(int offset, byte[] key) {
+		if (this.buffer.getShort(offset + 13) != key.length)
+			return false;
+		int keyOffset = offset + RECORD_HEADER_SIZE;
+		for (int i = 0; i < key.length; i++) {
+			if (this.buffer.get(keyOffset + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * 线性探测的开放寻址索引, offset为0表示空位
+	 */
+
+	private void resetIndex(int capacity) {
+		this.hashes = new long[capacity];
+		this.offsets = new int[capacity];
+		this.size = 0;
+	}
+
+	private int find(long hash, byte[] key) {
+		int mask = this.offsets.length - 1;
+		for (int i = (int) hash & mask; this.offsets[i] != 0; i = (i + 1) & mask) {
+			if (this.hashes[i] == hash && keyEquals(this.offsets[i], key))
+				return this.offsets[i];
+		}
+		return 0;
+	}
+
+	private void putIndex(long hash, int offset) {
+		if ((this.size + 1) * 4L > this.offsets.length * 3L) {
+			long[] oldHashes = this.hashes;
+			int[] oldOffsets = this.offsets;
+			this.hashes = new long[oldOffsets.length * 2];
+			this.offsets = new int[oldOffsets.length * 2];
+			this.size = 0;
+			for (int i = 0; i < oldOffsets.length; i++) {
+				if (oldOffsets[i] != 0)
+					putIndex(oldHashes[i], oldOffsets[i]);
+			}
+		}
+		int mask = this.offsets.length - 1;
+		int i = (int) hash & mask;
+		while (this.offsets[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		this.hashes[i] = hash;
+		this.offsets[i] = offset;
+		this.size++;
+	}
+
+	/**
+	 * 删除后把后面的项前移, 不留墓碑
+	 */
+	private void removeIndex(long hash, int offset) {
+		int mask = this.offsets.length - 1;
+		int i = (int) hash & mask;
+		while (this.offsets[i] != offset) {
+			if (this.offsets[i] == 0)
+				return;
+			i = (i + 1) & mask;
+		}
+		this.offsets[i] = 0;
+		this.size--;
+		int j = (i + 1) & mask;
+		while (this.offsets[j] != 0) {
+			long h = this.hashes[j];
+			int o = this.offsets[j];
+			this.offsets[j] = 0;
+			this.size--;
+			putIndex(h, o);
+			j = (j + 1) & mask;
+		}
+	}
+
+	private static long hash(byte[] key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			h ^= b;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
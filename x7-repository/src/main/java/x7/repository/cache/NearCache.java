@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * 进程内有界缓存, W-TinyLFU淘汰<br>
+ * 新数据先进入window区(LRU), 被挤出window时,
+ * 和main区最久未访问的数据比较访问频率, 频率高的留下<br>
+ * 同时受条数, 权重(字节数)和过期时间限制<br>
+ * @author Sim
+ */
+public class NearCache<V> {
+
+    public interface Weigher<V> {
+        int weigh(V value);
+    }
+
+    private final static int SEGMENTS = 16;
+
+    private final Segment<V>[] segments;
+    private final FrequencySketch sketch;
+    private final Weigher<V> weigher;
+    private final long expireNanos;
+
+    /**
+     * 每次失效都会递增, 从远端读取前记下<br>
+     * 每个段在锁内记录最近一次失效时的值, 回填时段内有更晚的失效则放弃, 防止把失效前读到的旧值写回<br>
+     * 其他段的失效不影响回填
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public NearCache(int maxSize, long maxWeight, int timeSeconds, Weigher<V> weigher) {
+        this.weigher = weigher;
+        this.expireNanos = timeSeconds * 1000000000L;
+        this.sketch = new FrequencySketch(maxSize);
+        this.segments = new Segment[SEGMENTS];
+        int segmentSize = Math.max(maxSize / SEGMENTS, 1);
+        long segmentWeight = Math.max(maxWeight / SEGMENTS, 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment<>(segmentSize, segmentWeight);
+        }
+    }
+
+    public long epoch() {
+        return epoch.get();
+    }
+
+    public V get(String key) {
+        sketch.increment(key);
+        return segmentFor(key).get(key, System.nanoTime());
+    }
+
+    public void put(String key, V value) {
+        put(key, value, epoch.get());
+    }
+
+    /**
+     * @param epoch 读取远端之前的epoch(), 期间如有失效则放弃回填
+     */
+    public void put(String key, V value, long epoch) {
+        putNanos(key, value, epoch, expireNanos);
+    }
+
+    /**
+     * @param timeSeconds 这条数据的过期时间, 不使用构造时的默认值
+     */
+    public void put(String key, V value, long epoch, int timeSeconds) {
+        putNanos(key, value, epoch, timeSeconds * 1000000000L);
+    }
+
+    private void putNanos(String key, V value, long epoch, long expireNanos) {
+        if (value == null)
+            return;
+        int weight = weigher.weigh(value);
+        Entry<V> entry = new Entry<>(value, weight, System.nanoTime() + expireNanos);
+        segmentFor(key).put(key, entry, epoch, sketch);
+    }
+
+    public void invalidate(String key) {
+        long epoch = this.epoch.incrementAndGet();
+        segmentFor(key).remove(key, epoch);
+    }
+
+    public void invalidateByPrefix(String prefix) {
+        long epoch = this.epoch.incrementAndGet();
+        for (Segment<V> segment : segments) {
+            segment.removeByPrefix(prefix, epoch);
+        }
+    }
+
+    public void invalidateAll() {
+        long epoch = this.epoch.incrementAndGet();
+        for (Segment<V> segment : segments) {
+            segment.clear(epoch);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment<V> segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+        private final long expireAt;
+
+        private Entry(V value, int weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Segment<V> {
+
+        private final int windowMax;
+        private final int mainMax;
+        private final long maxWeight;
+        private long weight;
+        private long invalidatedEpoch;
+
+        private final LinkedHashMap<String, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Segment(int maxSize, long maxWeight) {
+            this.windowMax = Math.max(maxSize / 100, 1);
+            this.mainMax = Math.max(maxSize - windowMax, 1);
+            this.maxWeight = maxWeight;
+        }
+
+        private synchronized V get(String key, long now) {
+            Entry<V> entry = window.get(key);
+            LinkedHashMap<String, Entry<V>> region = window;
+            if (entry == null) {
+                entry = main.get(key);
+                region = main;
+            }
+            if (entry == null)
+                return null;
+            if (entry.expireAt - now <= 0) {
+                region.remove(key);
+                weight -= entry.weight;
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(String key, Entry<V> entry, long epoch, FrequencySketch sketch) {
+            if (epoch < invalidatedEpoch)
+                return;
+            remove0(key);
+            if (entry.weight > maxWeight)
+                return;
+
+            window.put(key, entry);
+            weight += entry.weight;
+
+            if (window.size() > windowMax) {
+                Map.Entry<String, Entry<V>> candidate = eldest(window);
+                window.remove(candidate.getKey());
+                admit(candidate.getKey(), candidate.getValue(), sketch);
+            }
+
+            while (weight > maxWeight) {
+                LinkedHashMap<String, Entry<V>> region = main.isEmpty() ? window : main;
+                Map.Entry<String, Entry<V>> victim = eldest(region);
+                region.remove(victim.getKey());
+                weight -= victim.getValue().weight;
+            }
+        }
+
+        private void admit(String key, Entry<V> candidate, FrequencySketch sketch) {
+            if (main.size() < mainMax) {
+                main.put(key, candidate);
+                return;
+            }
+            Map.Entry<String, Entry<V>> victim = eldest(main);
+            if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+                main.remove(victim.getKey());
+                weight -= victim.getValue().weight;
+                main.put(key, candidate);
+            } else {
+                weight -= candidate.weight;
+            }
+        }
+
+        private synchronized void remove(String key, long epoch) {
+            invalidatedEpoch = Math.max(invalidatedEpoch, epoch);
+            remove0(key);
+        }
+
+        private void remove0(String key) {
+            Entry<V> old = window.remove(key);
+            if (old == null)
+                old = main.remove(key);
+            if (old != null)
+                weight -= old.weight;
+        }
+
+        private synchronized void removeByPrefix(String prefix, long epoch) {
+            invalidatedEpoch = Math.max(invalidatedEpoch, epoch);
+            removeByPrefix(window, prefix);
+            removeByPrefix(main, prefix);
+        }
+
+        private void removeByPrefix(LinkedHashMap<String, Entry<V>> region, String prefix) {
+            Iterator<Map.Entry<String, Entry<V>>> ite = region.entrySet().iterator();
+            while (ite.hasNext()) {
+                Map.Entry<String, Entry<V>> e = ite.next();
+                if (e.getKey().startsWith(prefix)) {
+                    weight -= e.getValue().weight;
+                    ite.remove();
+                }
+            }
+        }
+
+        private synchronized void clear(long epoch) {
+            invalidatedEpoch = Math.max(invalidatedEpoch, epoch);
+            window.clear();
+            main.clear();
+            weight = 0;
+        }
+
+        private synchronized int size() {
+            return window.size() + main.size();
+        }
+
+        private static <V> Map.Entry<String, Entry<V>> eldest(LinkedHashMap<String, Entry<V>> region) {
+            return region.entrySet().iterator().next();
+        }
+    }
+}
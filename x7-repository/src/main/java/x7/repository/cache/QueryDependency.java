@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import x7.core.bean.BeanElement;
+import x7.core.bean.Conjunction;
+import x7.core.bean.Criteria;
+import x7.core.bean.DataPermission;
+import x7.core.bean.KV;
+import x7.core.bean.Parsed;
+import x7.core.bean.Predicate;
+import x7.core.bean.Sort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 
+ * 查询结果的依赖, 用redis set记录: 依赖集合 -> 结果Key<br>
+ * id.{id}: 结果含有此id, 删除时失效<br>
+ * col.{property}: 条件或排序用到此属性, 更新此属性时失效<br>
+ * eq.{property}.{value}: 顶层AND条件property = value, 新增的对象只可能被同值的查询匹配, 值按数据库的比较规则归一<br>
+ * eqcol.{property}: 所有eq.{property}.*的结果, 新增的对象此属性无值时失效<br>
+ * any: 没有可用的eq条件, 任何新增都失效<br>
+ * window: 分页结果, 删除会改变总数和后续页, 任何删除都失效<br>
+ * all: 无法分析的条件, 任何写都失效<br>
+ * 所有依赖集合与结果Key在同一个{hash tag}下<br>
+ * @author sim
+ *
+ */
+public final class QueryDependency {
+
+	private final static String DEP = ".dep.";
+	private final static String ID = "id.";
+	private final static String COL = "col.";
+	private final static String EQ = "eq.";
+	private final static String EQ_COL = "eqcol.";
+	private final static String ANY = "any";
+	private final static String WINDOW = "window";
+	private final static String ALL = "all";
+
+	private QueryDependency(){}
+
+	private static String prefix(Class clz) {
+		return "{" + clz.getName() + "}" + DEP;
+	}
+
+	/**
+	 * 查询结果要登记到的依赖集合
+	 * @param condition 只分析Criteria, 其他条件登记到all
+	 * @param keyList 结果中对象的key
+	 */
+	public static List<String> of(Class clz, Object condition, List<String> keyList, boolean isPaged) {
+
+		String prefix = prefix(clz);
+		List<String> depList = new ArrayList<>();
+
+		if (condition == null || condition.getClass() != Criteria.class) {
+			depList.add(prefix + ALL);
+			return depList;
+		}
+
+		Criteria criteria = (Criteria) condition;
+		Set<String> propertySet = new LinkedHashSet<>();
+		if (!addProperties(criteria.getListX(), propertySet)) {
+			depList.add(prefix + ALL);
+			return depList;
+		}
+		List<Sort> sortList = criteria.getSortList();
+		if (sortList != null) {
+			for (Sort sort : sortList) {
+				addOrderBy(sort.getOrderBy(), propertySet);
+			}
+		}
+		for (KV kv : criteria.getFixedSortList()) {
+			addOrderBy(kv.k, propertySet);
+		}
+		DataPermission dataPermission = criteria.getDataPermission();
+		if (dataPermission != null && dataPermission.getDataPermissionKey() != null) {
+			propertySet.add(dataPermission.getDataPermissionKey());
+		}
+
+		for (String property : propertySet) {
+			depList.add(prefix + COL + property);
+		}
+
+		Criteria.X eq = findEq(criteria.getListX());
+		if (eq == null) {
+			depList.add(prefix + ANY);
+		} else {
+			depList.add(prefix + EQ + eq.getKey() + "." + toValue(eq.getValue()));
+			depList.add(prefix + EQ_COL + eq.getKey());
+		}
+
+		if (isPaged) {
+			depList.add(prefix + WINDOW);
+		}
+
+		if (keyList != null) {
+			for (String key : keyList) {
+				depList.add(prefix + ID + key);
+			}
+		}
+
+		return depList;
+	}
+
+	/**
+	 * 新增对象时要失效的依赖集合
+	 */
+	public static List<String> onCreate(Class clz, Parsed parsed, Object obj) {
+		String prefix = prefix(clz);
+		List<String> depList = new ArrayList<>();
+		depList.add(prefix + ALL);
+		depList.add(prefix + ANY);
+		for (BeanElement element : parsed.getBeanElementList()) {
+			Object value;
+			try {
+				value = element.getMethod.invoke(obj);
+			} catch (Exception e) {
+				value = null;
+			}
+			if (isEqValue(value)) {
+				depList.add(prefix + EQ + element.getProperty() + "." + toValue(value));
+			} else {
+				depList.add(prefix + EQ_COL + element.getProperty());
+			}
+		}
+		return depList;
+	}
+
+	/**
+	 * 更新对象时要失效的依赖集合
+	 * @param propertyList 被更新的属性
+	 */
+	public static List<String> onRefresh(Class clz, Collection<String> propertyList) {
+		String prefix = prefix(clz);
+		List<String> depList = new ArrayList<>();
+		depList.add(prefix + ALL);
+		for (String property : propertyList) {
+			depList.add(prefix + COL + property);
+		}
+		return depList;
+	}
+
+	/**
+	 * 删除对象时要失效的依赖集合
+	 */
+	public static List<String> onRemove(Class clz, String key) {
+		String prefix = prefix(clz);
+		List<String> depList = new ArrayList<>();
+		depList.add(prefix + ALL);
+		depList.add(prefix + WINDOW);
+		depList.add(prefix + ID + key);
+		return depList;
+	}
+
+	/**
+	 * 批量删除对象时要失效的依赖集合
+	 */
+	public static List<String> onRemove(Class clz, List<String> keyList) {
+		String prefix = prefix(clz);
+		List<String> depList = new ArrayList<>(keyList.size() + 2);
+		depList.add(prefix + ALL);
+		depList.add(prefix + WINDOW);
+		for (String key : keyList) {
+			depList.add(prefix + ID + key);
+		}
+		return depList;
+	}
+
+	/**
+	 * @return false: 含有无法分析的条件
+	 */
+	private static boolean addProperties(List<Criteria.X> listX, Set<String> propertySet) {
+		if (listX == null)
+			return true;
+		for (Criteria.X x : listX) {
+			if (x.getPredicate() == Predicate.X)
+				return false;
+			if (x.getSubList() != null) {
+				if (!addProperties(x.getSubList(), propertySet))
+					return false;
+				continue;
+			}
+			if (x.getPredicate() == null || x.getPredicate() == Predicate.SUB_BEGIN || x.getPredicate() == Predicate.SUB_END)
+				continue;
+			if (x.getKey() == null)
+				return false;
+			propertySet.add(x.getKey());
+		}
+		return true;
+	}
+
+	private static void addOrderBy(String orderBy, Set<String> propertySet) {
+		if (orderBy == null)
+			return;
+		for (String property : orderBy.split(",")) {
+			property = property.trim();
+			if (!property.isEmpty())
+				propertySet.add(property);
+		}
+	}
+
+	/**
+	 * 顶层全是AND时, 第一个 property = value 的条件
+	 */
+	private static Criteria.X findEq(List<Criteria.X> listX) {
+		if (listX == null)
+			return null;
+		Criteria.X eq = null;
+		for (Criteria.X x : listX) {
+			if (x.getConjunction() == Conjunction.OR)
+				return null;
+			if (eq == null && x.getPredicate() == Predicate.EQ && x.getSubList() == null
+					&& x.getKey() != null && isEqValue(x.getValue())) {
+				eq = x;
+			}
+		}
+		return eq;
+	}
+
+	/**
+	 * 实体和条件中写法一致的值, 其他类型(日期, 小数等)不做精确匹配
+	 */
+	private static boolean isEqValue(Object value) {
+		return value instanceof String || value instanceof Integer || value instanceof Long
+				|| value instanceof Short || value instanceof Byte || value instanceof Boolean
+				|| value instanceof Enum;
+	}
+
+	/**
+	 * 按数据库的比较规则归一: 字符串忽略大小写和末尾空格, 布尔值与0/1相同
+	 */
+	private static String toValue(Object value) {
+		if (value instanceof Boolean)
+			return ((Boolean) value) ? "1" : "0";
+		if (value instanceof Enum)
+			return toStringValue(((Enum) value).name());
+		if (value instanceof String)
+			return toStringValue((String) value);
+		return String.valueOf(value);
+	}
+
+	private static String toStringValue(String value) {
+		int end = value.length();
+		while (end > 0 && value.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return value.substring(0, end).toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import x7.core.bean.Sort;
+import x7.core.web.Direction;
+import x7.core.web.Page;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * ResultMapped查询及reduce结果的紧凑编码<br>
+ * 每个值一个字节的类型标记, 解码后类型不变, 整数和时间按变长写入<br>
+ * Map的key在第一次出现时写入, 之后只写序号, 多行结果的列名只写一次<br>
+ * 支持: null, 字符串, 基本类型的包装类, BigDecimal, BigInteger, 日期时间, byte[], Map, List, Page<br>
+ * 遇到其他类型时encode返回null, 结果不缓存<br>
+ * @author sim
+ *
+ */
+public final class ResultMappedCodec {
+
+	private final static byte VERSION = 1;
+
+	private final static byte NULL = 0;
+	private final static byte STRING = 1;
+	private final static byte INTEGER = 2;
+	private final static byte LONG = 3;
+	private final static byte DOUBLE = 4;
+	private final static byte FLOAT = 5;
+	private final static byte SHORT = 6;
+	private final static byte BYTE = 7;
+	private final static byte TRUE = 8;
+	private final static byte FALSE = 9;
+	private final static byte BIG_DECIMAL = 10;
+	private final static byte BIG_INTEGER = 11;
+	private final static byte DATE = 12;
+	private final static byte SQL_DATE = 13;
+	private final static byte SQL_TIME = 14;
+	private final static byte TIMESTAMP = 15;
+	private final static byte LOCAL_DATE = 16;
+	private final static byte LOCAL_TIME = 17;
+	private final static byte LOCAL_DATE_TIME = 18;
+	private final static byte BYTES = 19;
+	private final static byte MAP = 20;
+	private final static byte LIST = 21;
+	private final static byte PAGE = 22;
+
+	private ResultMappedCodec(){}
+
+	/**
+	 * @return null: 含有不支持的类型
+	 */
+	public static byte[] encode(Object obj) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bos);
+		try {
+			out.writeByte(VERSION);
+			write(out, obj, new HashMap<String, Integer>());
+			out.flush();
+		} catch (UnsupportedTypeException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalArgumentException 版本不符或数据损坏
+	 */
+	public static Object decode(byte[] bytes) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		try {
+			if (in.readByte() != VERSION)
+				throw new IllegalArgumentException("ResultMappedCodec, unknown version");
+			return read(in, new ArrayList<String>());
+		} catch (IOException e) {
+			throw new IllegalArgumentException("ResultMappedCodec, corrupted bytes", e);
+		}
+	}
+
+	private static void write(DataOutputStream out, Object obj, Map<String, Integer> nameMap) throws IOException {
+		if (obj == null) {
+			out.writeByte(NULL);
+		} else if (obj instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) obj);
+		} else if (obj instanceof Integer) {
+			out.writeByte(INTEGER);
+			writeVarLong(out, (Integer) obj);
+		} else if (obj instanceof Long) {
+			out.writeByte(LONG);
+			writeVarLong(out, (Long) obj);
+		} else if (obj instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) obj);
+		} else if (obj instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) obj);
+		} else if (obj instanceof Short) {
+			out.writeByte(SHORT);
+			writeVarLong(out, (Short) obj);
+		} else if (obj instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) obj);
+		} else if (obj instanceof Boolean) {
+			out.writeByte((Boolean) obj ? TRUE : FALSE);
+		} else if (obj instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) obj;
+			out.writeByte(BIG_DECIMAL);
+			writeVarLong(out, decimal.scale());
+			writeBytes(out, decimal.unscaledValue().toByteArray());
+		} else if (obj instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			writeBytes(out, ((BigInteger) obj).toByteArray());
+		} else if (obj instanceof java.util.Date) {
+			writeDate(out, (java.util.Date) obj);
+		} else if (obj instanceof LocalDate) {
+			out.writeByte(LOCAL_DATE);
+			writeVarLong(out, ((LocalDate) obj).toEpochDay());
+		} else if (obj instanceof LocalTime) {
+			out.writeByte(LOCAL_TIME);
+			writeVarLong(out, ((LocalTime) obj).toNanoOfDay());
+		} else if (obj instanceof LocalDateTime) {
+			LocalDateTime dateTime = (LocalDateTime) obj;
+			out.writeByte(LOCAL_DATE_TIME);
+			writeVarLong(out, dateTime.toLocalDate().toEpochDay());
+			writeVarLong(out, dateTime.toLocalTime().toNanoOfDay());
+		} else if (obj instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) obj);
+		} else if (obj instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) obj;
+			out.writeByte(MAP);
+			writeVarInt(out, map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (!(entry.getKey() instanceof String))
+					throw new UnsupportedTypeException();
+				writeName(out, (String) entry.getKey(), nameMap);
+				write(out, entry.getValue(), nameMap);
+			}
+		} else if (obj instanceof List) {
+			List<?> list = (List<?>) obj;
+			out.writeByte(LIST);
+			writeVarInt(out, list.size());
+			for (Object o : list) {
+				write(out, o, nameMap);
+			}
+		} else if (obj instanceof Page) {
+			writePage(out, (Page<?>) obj, nameMap);
+		} else {
+			throw new UnsupportedTypeException();
+		}
+	}
+
+	private static void writeDate(DataOutputStream out, java.util.Date date) throws IOException {
+		Class<?> type = date.getClass();
+		if (type == java.util.Date.class) {
+			out.writeByte(DATE);
+			writeVarLong(out, date.getTime());
+		} else if (type == java.sql.Date.class) {
+			out.writeByte(SQL_DATE);
+			writeVarLong(out, date.getTime());
+		} else if (type == java.sql.Time.class) {
+			out.writeByte(SQL_TIME);
+			writeVarLong(out, date.getTime());
+		} else if (type == java.sql.Timestamp.class) {
+			out.writeByte(TIMESTAMP);
+			writeVarLong(out, date.getTime());
+			writeVarLong(out, ((java.sql.Timestamp) date).getNanos());
+		} else {
+			throw new UnsupportedTypeException();
+		}
+	}
+
+	/**
+	 * 只编码分页信息和结果, 不含keyList, clz解码为Map
+	 */
+	private static void writePage(DataOutputStream out, Page<?> p, Map<String, Integer> nameMap) throws IOException {
+		out.writeByte(PAGE);
+		writeVarLong(out, p.getPage());
+		writeVarLong(out, p.getRows());
+		writeVarLong(out, p.getTotalRows());
+		out.writeBoolean(p.isScroll());
+		List<Sort> sortList = p.getSortList();
+		if (sortList == null) {
+			writeVarInt(out, 0);
+		} else {
+			writeVarInt(out, sortList.size() + 1);
+			for (Sort sort : sortList) {
+				writeString(out, sort.getOrderBy());
+				writeString(out, sort.getDirection() == null ? null : sort.getDirection().name());
+			}
+		}
+		write(out, p.getList(), nameMap);
+	}
+
+	private static void writeName(DataOutputStream out, String name, Map<String, Integer> nameMap) throws IOException {
+		Integer index = nameMap.get(name);
+		if (index != null) {
+			writeVarInt(out, index + 1);
+			return;
+		}
+		nameMap.put(name, nameMap.size());
+		writeVarInt(out, 0);
+		writeString(out, name);
+	}
+
+	private static void writeString(DataOutputStream out, String str) throws IOException {
+		if (str == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * zigzag, 绝对值小的负数也只占一两个字节
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		value = (value << 1) ^ (value >> 63);
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static Object read(DataInputStream in, List<String> nameList) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case INTEGER:
+				return (int) readVarLong(in);
+			case LONG:
+				return readVarLong(in);
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case SHORT:
+				return (short) readVarLong(in);
+			case BYTE:
+				return in.readByte();
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case BIG_DECIMAL:
+				int scale = (int) readVarLong(in);
+				return new BigDecimal(new BigInteger(readBytes(in)), scale);
+			case BIG_INTEGER:
+				return new BigInteger(readBytes(in));
+			case DATE:
+				return new java.util.Date(readVarLong(in));
+			case SQL_DATE:
+				return new java.sql.Date(readVarLong(in));
+			case SQL_TIME:
+				return new java.sql.Time(readVarLong(in));
+			case TIMESTAMP:
+				java.sql.Timestamp timestamp = new java.sql.Timestamp(readVarLong(in));
+				timestamp.setNanos((int) readVarLong(in));
+				return timestamp;
+			case LOCAL_DATE:
+				return LocalDate.ofEpochDay(readVarLong(in));
+			case LOCAL_TIME:
+				return LocalTime.ofNanoOfDay(readVarLong(in));
+			case LOCAL_DATE_TIME:
+				LocalDate date = LocalDate.ofEpochDay(readVarLong(in));
+				return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readVarLong(in)));
+			case BYTES:
+				return readBytes(in);
+			case MAP:
+				int size = readVarInt(in);
+				Map<String, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+				for (int i = 0; i < size; i++) {
+					String name = readName(in, nameList);
+					map.put(name, read(in, nameList));
+				}
+				return map;
+			case LIST:
+				int length = readVarInt(in);
+				List<Object> list = new ArrayList<>(length);
+				for (int i = 0; i < length; i++) {
+					list.add(read(in, nameList));
+				}
+				return list;
+			case PAGE:
+				return readPage(in, nameList);
+			default:
+				throw new IllegalArgumentException("ResultMappedCodec, unknown type: " + type);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Page<Map<String, Object>> readPage(DataInputStream in, List<String> nameList) throws IOException {
+		Page<Map<String, Object>> p = new Page<>();
+		p.setClz(Map.class);
+		p.setPage((int) readVarLong(in));
+		p.setRows((int) readVarLong(in));
+		p.setTotalRows(readVarLong(in));
+		p.setScroll(in.readBoolean());
+		int sortSize = readVarInt(in) - 1;
+		if (sortSize >= 0) {
+			List<Sort> sortList = new ArrayList<>(sortSize);
+			for (int i = 0; i < sortSize; i++) {
+				String orderBy = readString(in);
+				String direction = readString(in);
+				sortList.add(new Sort(orderBy, direction == null ? null : Direction.valueOf(direction)));
+			}
+			p.setSortList(sortList);
+		}
+		p.reSetList((List) read(in, nameList));
+		return p;
+	}
+
+	private static String readName(DataInputStream in, List<String> nameList) throws IOException {
+		int index = readVarInt(in);
+		if (index > 0)
+			return nameList.get(index - 1);
+		String name = readString(in);
+		nameList.add(name);
+		return name;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IllegalArgumentException("ResultMappedCodec, malformed varint");
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return (value >>> 1) ^ -(value & 1);
+		}
+		throw new IllegalArgumentException("ResultMappedCodec, malformed varint");
+	}
+
+	private static class UnsupportedTypeException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private UnsupportedTypeException() {
+			super(null, null, false, false);
+		}
+	}
+}
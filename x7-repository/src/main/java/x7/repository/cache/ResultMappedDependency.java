@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import x7.core.bean.Criteria;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * ResultMapped查询依赖的实体类: 主类, 及sourceScript里FROM, JOIN后的类<br>
+ * 缓存的结果随其中任一类的写而失效<br>
+ * 表名不是已解析的实体类, 或含有子查询时, 无法确定依赖, 不缓存<br>
+ * @author sim
+ *
+ */
+public final class ResultMappedDependency {
+
+	private final static String FROM = "from";
+	private final static String JOIN = "join";
+	private final static String ON = "on";
+	private final static String WHERE = "where";
+	private final static String COMMA = ",";
+
+	private ResultMappedDependency(){}
+
+	/**
+	 * @return null: 无法确定依赖; 第一个为主类
+	 */
+	@SuppressWarnings("rawtypes")
+	public static List<Class> of(Criteria.ResultMappedCriteria resultMapped) {
+
+		Class clz = resultMapped.getClz();
+		if (clz == null)
+			return null;
+
+		List<Class> clzList = new ArrayList<>();
+		clzList.add(clz);
+
+		String script = resultMapped.sourceScript();
+		if (script == null)
+			return clzList;
+		if (script.contains("("))
+			return null;
+
+		boolean isTable = true;
+		boolean isFromList = false;
+		for (String token : script.trim().replace(COMMA, " " + COMMA + " ").split("\\s+")) {
+			if (token.isEmpty())
+				continue;
+			String lower = token.toLowerCase();
+			if (isTable) {
+				if (lower.equals(FROM))
+					continue;
+				Parsed parsed = Parser.get(token);
+				if (parsed == null)
+					return null;
+				if (!clzList.contains(parsed.getClz()))
+					clzList.add(parsed.getClz());
+				isTable = false;
+				isFromList = true;
+			} else if (lower.equals(FROM) || lower.equals(JOIN)) {
+				isTable = true;
+			} else if (lower.equals(COMMA)) {
+				isTable = isFromList;
+			} else if (lower.equals(ON) || lower.equals(WHERE)) {
+				isFromList = false;
+			}
+		}
+		return clzList;
+	}
+
+	/**
+	 * 有一个类不缓存, 整个结果不缓存, 因为这个类的写不会让结果失效
+	 */
+	@SuppressWarnings("rawtypes")
+	public static boolean isNoCache(List<Class> clzList) {
+		if (clzList == null)
+			return true;
+		for (Class clz : clzList) {
+			if (Parser.get(clz).isNoCache())
+				return true;
+		}
+		return false;
+	}
+}
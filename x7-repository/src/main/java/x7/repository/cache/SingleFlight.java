@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * 同一个key同时只有一个线程回源(leader)<br>
+ * 其他线程(follower)等待leader完成后, 拿leader的结果自行处理, 一般是重读缓存<br>
+ * leader失败或超时, follower自己回源<br>
+ * @author sim
+ *
+ */
+public class SingleFlight {
+
+	public interface Loader<V> {
+		V load();
+	}
+
+	public interface Follower<V> {
+		V follow(V leaderValue);
+	}
+
+	private final ConcurrentHashMap<String, Call> callMap = new ConcurrentHashMap<>();
+	private final long waitMillis;
+
+	public SingleFlight(long waitMillis) {
+		this.waitMillis = waitMillis;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <V> V execute(String key, Loader<V> loader, Follower<V> follower) {
+
+		Call call = new Call();
+		Call leader = this.callMap.putIfAbsent(key, call);
+		if (leader == null) {
+			try {
+				V value = loader.load();
+				call.value = value;
+				call.isDone = true;
+				return value;
+			} finally {
+				this.callMap.remove(key, call);
+				call.latch.countDown();
+			}
+		}
+
+		try {
+			if (!leader.latch.await(this.waitMillis, TimeUnit.MILLISECONDS))
+				return loader.load();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return loader.load();
+		}
+
+		if (!leader.isDone)
+			return loader.load();
+
+		return follower.follow((V) leader.value);
+	}
+
+	private static class Call {
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private Object value;
+		private boolean isDone;
+	}
+}
@@ -26,6 +26,7 @@ import x7.core.web.Page;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 
 /**
@@ -43,6 +44,22 @@ public interface Dao {
 
 	boolean remove(Object obj);
 
+	/**
+	 * @return 与objList一一对应, true: 更新了行
+	 */
+	boolean[] refreshBatch(List<? extends Object> objList);
+
+	/**
+	 * @return 与objList一一对应, true: 删除了行
+	 */
+	boolean[] removeBatch(List<? extends Object> objList);
+
+	/**
+	 * 只读向前的ResultSet, 逐行映射<br>
+	 * Stream close时归还连接
+	 */
+	<T> Stream<T> stream(Criteria criteria);
+
 	<T> boolean refreshByCondition(RefreshCondition<T> conditon);
 
 	
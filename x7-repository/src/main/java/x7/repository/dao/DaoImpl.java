@@ -28,18 +28,23 @@ import x7.core.web.Page;
 import x7.repository.CriteriaParser;
 import x7.core.config.ConfigAdapter;
 import x7.repository.util.ResultSetUtil;
+import x7.repository.exception.CreateBatchException;
 import x7.repository.exception.PersistenceException;
 import x7.repository.exception.RollbackException;
 import x7.repository.mapper.Mapper;
 import x7.repository.mapper.MapperFactory;
+import x7.repository.mapper.RowMapper;
+import x7.repository.mapper.StatementBinder;
 import x7.repository.util.ResultSortUtil;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Sim
@@ -88,6 +93,53 @@ public class DaoImpl implements Dao {
         }
     }
 
+    /**
+     * MySQL单条语句的占位符上限
+     */
+    private final static int MAX_PARAMETERS = 65535;
+
+    private int batchSize = 1000;
+
+    /**
+     * createBatch每块的对象数, 连接是自动提交时, 每块一次提交
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    private int maxRowsPerStatement = 1000;
+    private long maxStatementBytes = 1024 * 1024;
+
+    /**
+     * 多行INSERT一条语句最多几行
+     */
+    public void setMaxRowsPerStatement(int maxRowsPerStatement) {
+        this.maxRowsPerStatement = Math.max(maxRowsPerStatement, 1);
+    }
+
+    /**
+     * 多行INSERT一条语句估算的最大字节数, 应小于max_allowed_packet<br>
+     * 单行超过时仍然单独写入
+     */
+    public void setMaxStatementBytes(long maxStatementBytes) {
+        this.maxStatementBytes = Math.max(maxStatementBytes, 1);
+    }
+
+    private int fetchSize = 0;
+
+    /**
+     * stream(Criteria)的fetchSize<br>
+     * 0: 由方言决定, MySQL逐行读取
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = Math.max(fetchSize, 0);
+    }
+
+    /**
+     * 分块写入, 方言支持时每块用多行VALUES<br>
+     * 一块的主键都是0时, 把自增主键回填到对象<br>
+     * 失败时抛出CreateBatchException, 带失败的块和已写入的对象数
+     */
     @Override
     public boolean createBatch(List<? extends Object> objList) {
 
@@ -100,75 +152,198 @@ public class DaoImpl implements Dao {
 
         List<BeanElement> eles = MapperFactory.getElementList(clz);
 
+        Parsed parsed = Parser.get(clz);
+        Field keyOneField = parsed.getKeyField(X.KEY_ONE);
+        if (Objects.isNull(keyOneField))
+            throw new PersistenceException("No setting of PrimaryKey by @X.Key");
+        boolean isKeyGenerated = keyOneField.getType() != String.class;
+
+        StatementBinder binder = StatementBinder.get(clz, eles);
+        int size = objList.size();
+        int chunkSize = this.batchSize;
+        int rowsPerStatement = 1;
+        if (this.dialect.isMultiRowInsert())
+            rowsPerStatement = Math.max(Math.min(Math.min(chunkSize, this.maxRowsPerStatement), MAX_PARAMETERS / Math.max(eles.size(), 1)), 1);
+
         Connection conn = null;
-        PreparedStatement pstmt = null;
+        boolean isAutoCommit = false;
+        int fromIndex = 0;
+        int createdCount = 0;
         try {
-            Parsed parsed = Parser.get(clz);
-
-            Long keyOneValue = 0L;
-            Field keyOneField = parsed.getKeyField(X.KEY_ONE);
-            if (Objects.isNull(keyOneField))
-                throw new PersistenceException("No setting of PrimaryKey by @X.Key");
-            Class keyOneType = keyOneField.getType();
-            if (keyOneType != String.class) {
-                keyOneValue = keyOneField.getLong(obj);
+            conn = DataSourceUtil.getConnection();
+            isAutoCommit = conn.getAutoCommit();
+            if (isAutoCommit)
+                conn.setAutoCommit(false);
+
+            for (; fromIndex < size; fromIndex += chunkSize) {
+                List<? extends Object> chunk = objList.subList(fromIndex, Math.min(fromIndex + chunkSize, size));
+                Field backfillField = isKeyGenerated && isKeyAbsent(chunk, keyOneField) ? keyOneField : null;
+                createChunk(conn, sql, binder, chunk, rowsPerStatement, backfillField);
+                if (isAutoCommit)
+                    conn.commit();
+                createdCount += chunk.size();
             }
 
-            conn = DataSourceUtil.getConnection();
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (isAutoCommit)
+                rollback(conn);
 
-            if (keyOneType != String.class && (keyOneValue == null || keyOneValue == 0)) {
-                pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            } else {
-                pstmt = conn.prepareStatement(sql);
-            }
+            int toIndex = Math.min(fromIndex + chunkSize, size);
+            throw new CreateBatchException("RollbackException: " + e.getMessage() + ", while createBatch " + clz.getName()
+                    + " [" + fromIndex + ", " + toIndex + ") of " + size + ", created " + createdCount, fromIndex, toIndex, createdCount);
 
-            for (Object o : objList) {
+        } finally {
+            if (isAutoCommit)
+                resetAutoCommit(conn);
+            DataSourceUtil.releaseConnection(conn);
+        }
 
-                int i = 1;
-                for (BeanElement ele : eles) {
-
-                    Object value = ele.getMethod.invoke(o);
-                    if (value == null) {
-                        if (ele.clz.isEnum())
-                            throw new PersistenceException(
-                                    "ENUM CAN NOT NULL, property:" + clz.getName() + SqlScript.POINT + ele.getProperty());
-                        if (ele.clz == Boolean.class || ele.clz == Integer.class || ele.clz == Long.class
-                                || ele.clz == Double.class || ele.clz == Float.class || ele.clz == BigDecimal.class
-                                || ele.clz == Byte.class || ele.clz == Short.class)
-                            value = 0;
-                        pstmt.setObject(i++, value);
-                    } else {
-                        if (ele.isJson) {
-                            String str = JsonX.toJson(value);
-                            this.dialect.setJSON(i++, str, pstmt);
-                        } else if (ele.clz.isEnum()) {
-                            String str = value.toString();
-                            pstmt.setObject(i++, str);
-                        } else {
-                            value = this.dialect.filterValue(value);
-                            pstmt.setObject(i++, value);
-                        }
-                    }
+        return true;
+    }
 
-                }
+    /**
+     * @param backfillField null: 不回填主键
+     */
+    private void createChunk(Connection conn, String sql, StatementBinder binder, List<? extends Object> chunk,
+                             int rowsPerStatement, Field backfillField) throws Exception {
 
-                pstmt.addBatch();
+        int size = chunk.size();
+        if (rowsPerStatement <= 1) {
+            PreparedStatement pstmt = null;
+            try {
+                pstmt = prepare(conn, sql, backfillField);
+                for (Object o : chunk) {
+                    binder.bind(pstmt, o, this.dialect);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                if (backfillField != null)
+                    backfill(pstmt, chunk, backfillField);
+            } finally {
+                close(pstmt);
+            }
+            return;
+        }
 
+        PreparedStatement pstmt = null;
+        int rows = 0;
+        try {
+            for (int fromIndex = 0, toIndex; fromIndex < size; fromIndex = toIndex) {
+                toIndex = nextGroup(binder, chunk, fromIndex, rowsPerStatement);
+                List<? extends Object> group = chunk.subList(fromIndex, toIndex);
+                if (group.size() != rows) {
+                    close(pstmt);
+                    rows = group.size();
+                    pstmt = prepare(conn, multiRowSql(sql, rows), backfillField);
+                }
+                int i = 1;
+                for (Object o : group) {
+                    i = binder.bind(pstmt, i, o, this.dialect);
+                }
+                pstmt.executeUpdate();
+                if (backfillField != null)
+                    backfill(pstmt, group, backfillField);
             }
+        } finally {
+            close(pstmt);
+        }
+    }
 
-            pstmt.executeBatch();
+    /**
+     * 一条语句不超过rowsPerStatement行, 估算的字节数不超过maxStatementBytes, 至少一行
+     * @return 这条语句最后一行的下一个位置
+     */
+    int nextGroup(StatementBinder binder, List<? extends Object> chunk, int fromIndex, int rowsPerStatement) {
+        int toIndex = Math.min(fromIndex + rowsPerStatement, chunk.size());
+        long bytes = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            bytes += binder.estimate(chunk.get(i));
+            if (bytes > this.maxStatementBytes && i > fromIndex)
+                return i;
+        }
+        return toIndex;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    private PreparedStatement prepare(Connection conn, String sql, Field backfillField) throws SQLException {
+        if (backfillField != null)
+            return conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        return conn.prepareStatement(sql);
+    }
+
+    /**
+     * INSERT INTO t (a, b) VALUES (?,?) => INSERT INTO t (a, b) VALUES (?,?),(?,?)
+     */
+    static String multiRowSql(String sql, int rows) {
+        if (rows <= 1)
+            return sql;
+        int index = sql.lastIndexOf("VALUES");
+        String values = sql.substring(index + "VALUES".length()).trim();
+        StringBuilder sb = new StringBuilder(index + (values.length() + 1) * rows + 8);
+        sb.append(sql, 0, index).append("VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                sb.append(",");
+            sb.append(values);
+        }
+        return sb.toString();
+    }
 
-            throw new RollbackException("RollbackException: " + e.getMessage() + ", while create: " + obj);
+    private static boolean isKeyAbsent(List<? extends Object> objList, Field keyOneField) throws IllegalAccessException {
+        for (Object o : objList) {
+            Object value = keyOneField.get(o);
+            if (value != null && ((Number) value).longValue() != 0)
+                return false;
+        }
+        return true;
+    }
 
+    /**
+     * 按顺序回填自增主键, 驱动不支持时忽略
+     */
+    private static void backfill(PreparedStatement pstmt, List<? extends Object> objList, Field keyOneField) throws SQLException, IllegalAccessException {
+        ResultSet rs;
+        try {
+            rs = pstmt.getGeneratedKeys();
+        } catch (SQLFeatureNotSupportedException e) {
+            return;
+        }
+        if (rs == null)
+            return;
+        try {
+            Class type = keyOneField.getType();
+            for (Object o : objList) {
+                if (!rs.next())
+                    return;
+                long id = rs.getLong(1);
+                if (type == int.class || type == Integer.class)
+                    keyOneField.set(o, (int) id);
+                else
+                    keyOneField.set(o, id);
+            }
         } finally {
-            close(pstmt);
-            DataSourceUtil.releaseConnection(conn);
+            rs.close();
         }
+    }
 
-        return true;
+    private static void rollback(Connection conn) {
+        if (conn == null)
+            return;
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void resetAutoCommit(Connection conn) {
+        if (conn == null)
+            return;
+        try {
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 
     protected boolean remove(Object obj, Connection conn) {
@@ -240,34 +415,7 @@ public class DaoImpl implements Dao {
                 pstmt = conn.prepareStatement(sql);
             }
 
-            int i = 1;
-            for (BeanElement ele : eles) {
-
-                Object value = ele.getMethod.invoke(obj);
-                if (value == null) {
-                    if (ele.clz.isEnum())
-                        throw new PersistenceException(
-                                "ENUM CAN NOT NULL, property:" + clz.getName() + SqlScript.POINT + ele.getProperty());
-                    if (ele.clz == Boolean.class || ele.clz == Integer.class || ele.clz == Long.class
-                            || ele.clz == Double.class || ele.clz == Float.class || ele.clz == BigDecimal.class
-                            || ele.clz == Byte.class || ele.clz == Short.class)
-                        value = 0;
-                    pstmt.setObject(i++, value);
-                } else {
-                    if (ele.isJson) {
-                        String str = JsonX.toJson(value);
-                        this.dialect.setJSON(i++, str, pstmt);
-                    } else if (ele.clz.isEnum()) {
-                        String str = value.toString();
-                        pstmt.setObject(i++, str);
-                    } else {
-                        value = this.dialect.filterValue(value);
-                        pstmt.setObject(i++, value);
-                    }
-
-                }
-
-            }
+            StatementBinder.get(clz, eles).bind(pstmt, obj, this.dialect);
 
             pstmt.execute();
 
@@ -294,25 +442,37 @@ public class DaoImpl implements Dao {
         return id;
     }
 
-    protected boolean refresh(Object obj, Connection conn) {
-
-        @SuppressWarnings("rawtypes")
-        Class clz = obj.getClass();
-        Parsed parsed = Parser.get(clz);
+    /**
+     * @return null: 没有要更新的属性
+     */
+    private String getRefreshSql(Parsed parsed, Map<String, Object> refreshMap) {
 
         String tableName = parsed.getTableName();
 
         StringBuilder sb = new StringBuilder();
         sb.append(SqlScript.UPDATE).append(SqlScript.SPACE).append(tableName).append(SqlScript.SPACE);
 
-        Map<String, Object> refreshMap = BeanUtilX.getRefreshMap(parsed, obj);
-
         String sql = SqlUtil.concatRefresh(sb, parsed, refreshMap);
 
         if (ConfigAdapter.isIsShowSql())
             System.out.println("refresh normally: " + sql);
 
         if (sql.contains("SET  WHERE"))
+            return null;
+        return sql;
+    }
+
+    protected boolean refresh(Object obj, Connection conn) {
+
+        @SuppressWarnings("rawtypes")
+        Class clz = obj.getClass();
+        Parsed parsed = Parser.get(clz);
+
+        Map<String, Object> refreshMap = BeanUtilX.getRefreshMap(parsed, obj);
+
+        String sql = getRefreshSql(parsed, refreshMap);
+
+        if (sql == null)
             return false;
 
         boolean flag = false;
@@ -351,6 +511,150 @@ public class DaoImpl implements Dao {
         return flag;
     }
 
+    /**
+     * SET的属性相同的对象共用一个PreparedStatement, 一个连接, 一个事务
+     * @return 与objList一一对应, true: 更新了行
+     */
+    @Override
+    public boolean[] refreshBatch(List<? extends Object> objList) {
+
+        boolean[] results = new boolean[objList.size()];
+        if (objList.isEmpty())
+            return results;
+
+        Class clz = objList.get(0).getClass();
+        Parsed parsed = Parser.get(clz);
+        Field keyOneField = parsed.getKeyField(X.KEY_ONE);
+        if (Objects.isNull(keyOneField))
+            throw new PersistenceException("No setting of PrimaryKey by @X.Key");
+
+        Map<String, List<Integer>> sqlMap = new LinkedHashMap<>();
+        List<Map<String, Object>> refreshMapList = new ArrayList<>(objList.size());
+        for (int i = 0, size = objList.size(); i < size; i++) {
+            Map<String, Object> refreshMap = BeanUtilX.getRefreshMap(parsed, objList.get(i));
+            refreshMapList.add(refreshMap);
+            String sql = getRefreshSql(parsed, refreshMap);
+            if (sql == null)
+                continue;
+            List<Integer> indexList = sqlMap.get(sql);
+            if (indexList == null) {
+                indexList = new ArrayList<>();
+                sqlMap.put(sql, indexList);
+            }
+            indexList.add(i);
+        }
+
+        Connection conn = null;
+        boolean isAutoCommit = false;
+        try {
+            conn = DataSourceUtil.getConnection();
+            isAutoCommit = conn.getAutoCommit();
+            if (isAutoCommit)
+                conn.setAutoCommit(false);
+
+            for (Map.Entry<String, List<Integer>> entry : sqlMap.entrySet()) {
+                List<Integer> indexList = entry.getValue();
+                PreparedStatement pstmt = null;
+                try {
+                    pstmt = conn.prepareStatement(entry.getKey());
+                    for (int index : indexList) {
+                        int i = 1;
+                        for (Object value : refreshMapList.get(index).values()) {
+                            value = this.dialect.filterValue(value);
+                            this.dialect.setObject(i++, value, pstmt);
+                        }
+                        SqlUtil.adpterSqlKey(pstmt, keyOneField, objList.get(index), i);
+                        pstmt.addBatch();
+                    }
+                    toResults(pstmt.executeBatch(), indexList, results);
+                } finally {
+                    close(pstmt);
+                }
+            }
+
+            if (isAutoCommit)
+                conn.commit();
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (isAutoCommit)
+                rollback(conn);
+            throw new RollbackException("RollbackException: " + e.getMessage() + ", while refreshBatch " + clz.getName());
+
+        } finally {
+            if (isAutoCommit)
+                resetAutoCommit(conn);
+            DataSourceUtil.releaseConnection(conn);
+        }
+
+        return results;
+    }
+
+    /**
+     * 一个JDBC batch, 一个连接, 一个事务
+     * @return 与objList一一对应, true: 删除了行
+     */
+    @Override
+    public boolean[] removeBatch(List<? extends Object> objList) {
+
+        boolean[] results = new boolean[objList.size()];
+        if (objList.isEmpty())
+            return results;
+
+        Class clz = objList.get(0).getClass();
+        Parsed parsed = Parser.get(clz);
+        Field keyOneField = parsed.getKeyField(X.KEY_ONE);
+        if (Objects.isNull(keyOneField))
+            throw new PersistenceException("No setting of PrimaryKey by @X.Key");
+
+        String sql = MapperFactory.getSql(clz, Mapper.REMOVE);
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        boolean isAutoCommit = false;
+        try {
+            conn = DataSourceUtil.getConnection();
+            isAutoCommit = conn.getAutoCommit();
+            if (isAutoCommit)
+                conn.setAutoCommit(false);
+
+            pstmt = conn.prepareStatement(sql);
+            List<Integer> indexList = new ArrayList<>(objList.size());
+            for (int i = 0, size = objList.size(); i < size; i++) {
+                SqlUtil.adpterSqlKey(pstmt, keyOneField, objList.get(i), 1);
+                pstmt.addBatch();
+                indexList.add(i);
+            }
+            toResults(pstmt.executeBatch(), indexList, results);
+
+            if (isAutoCommit)
+                conn.commit();
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (isAutoCommit)
+                rollback(conn);
+            throw new RollbackException("RollbackException: " + e.getMessage() + ", while removeBatch " + clz.getName());
+
+        } finally {
+            close(pstmt);
+            if (isAutoCommit)
+                resetAutoCommit(conn);
+            DataSourceUtil.releaseConnection(conn);
+        }
+
+        return results;
+    }
+
+    /**
+     * SUCCESS_NO_INFO: 驱动改写了批量语句, 不知道行数, 按成功处理
+     */
+    private static void toResults(int[] counts, List<Integer> indexList, boolean[] results) {
+        for (int i = 0; i < counts.length && i < indexList.size(); i++) {
+            results[indexList.get(i)] = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+        }
+    }
+
     @Override
     public long create(Object obj) {
 
@@ -409,11 +713,7 @@ public class DaoImpl implements Dao {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs != null) {
-                while (rs.next()) {
-                    T obj = clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-                }
+                map(clz, rs, eles, list);
             }
 
         } catch (Exception e) {
@@ -520,11 +820,7 @@ public class DaoImpl implements Dao {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs != null) {
-                while (rs.next()) {
-                    T obj = clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-                }
+                map(clz, rs, eles, list);
             }
 
         } catch (Exception e) {
@@ -570,11 +866,7 @@ public class DaoImpl implements Dao {
             List<BeanElement> eles = parsed.getBeanElementList();
             ResultSet rs = pstmt.executeQuery();
             if (rs != null) {
-                while (rs.next()) {
-                    T obj = (T) clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-                }
+                map(clz, rs, eles, list);
             }
 
         } catch (Exception e) {
@@ -631,13 +923,7 @@ public class DaoImpl implements Dao {
 
                 List<BeanElement> eles = MapperFactory.getElementList(clz);
 
-                while (rs.next()) {
-
-                    T obj = (T) clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-
-                }
+                map(clz, rs, eles, list);
 
             }
 
@@ -699,13 +985,7 @@ public class DaoImpl implements Dao {
                 List<BeanElement> eles = MapperFactory.getElementList(clz);
 
 
-                while (rs.next()) {
-
-                    T obj = (T) clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-
-                }
+                map(clz, rs, eles, list);
 
                 Parsed parsed = Parser.get(clz);
                 ResultSortUtil.sort(list,criteria,parsed);
@@ -750,6 +1030,125 @@ public class DaoImpl implements Dao {
         return list(criteria, conn);
     }
 
+    @Override
+    public <T> Stream<T> stream(Criteria criteria) {
+
+        Connection conn = RcDataSourceUtil.getConnection();
+        return stream(criteria, conn);
+    }
+
+    /**
+     * 连接, Statement, ResultSet随Stream关闭, 读完最后一行时也会关闭
+     */
+    protected <T> Stream<T> stream(Criteria criteria, Connection conn) {
+        Class<T> clz = (Class<T>) criteria.getClz();
+
+        List<Object> valueList = criteria.getValueList();
+
+        String[] sqlArr = this.criteriaParser.parse(criteria);
+
+        String sql = sqlArr[1];
+
+        int page = criteria.getPage();
+        int rows = criteria.getRows();
+
+        int start = (page - 1) * rows;
+
+        sql = dialect.match(sql, start, rows);
+        if (ConfigAdapter.isIsShowSql())
+            System.out.println(sql);
+
+        PreparedStatement pstmt = null;
+        try {
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            this.dialect.setFetchSize(this.fetchSize, pstmt);
+
+            int i = 1;
+            for (Object value : valueList) {
+                value = this.dialect.filterValue(value);
+                this.dialect.setObject(i++, value, pstmt);
+            }
+
+            ResultSet rs = pstmt.executeQuery();
+
+            Cursor<T> cursor = new Cursor<>(clz, conn, pstmt, rs);
+            return StreamSupport.stream(cursor, false).onClose(cursor);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            close(pstmt);
+            close(conn);
+            throw new RollbackException(
+                    "Exception occured by class = " + clz.getName() + ", message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 逐行映射的ResultSet游标, 作为Stream的onClose关闭资源
+     */
+    private class Cursor<T> extends Spliterators.AbstractSpliterator<T> implements Runnable {
+
+        private final Class<T> clz;
+        private final Connection conn;
+        private final PreparedStatement pstmt;
+        private final ResultSet rs;
+        private final List<BeanElement> eles;
+        private RowMapper.Bound<T> bound;
+        private boolean closed;
+
+        private Cursor(Class<T> clz, Connection conn, PreparedStatement pstmt, ResultSet rs) throws SQLException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.clz = clz;
+            this.conn = conn;
+            this.pstmt = pstmt;
+            this.rs = rs;
+            this.eles = MapperFactory.getElementList(clz);
+            RowMapper<T> rowMapper = dialect.getRowMapper(clz, eles);
+            if (rowMapper != null)
+                this.bound = rowMapper.bind(rs);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed)
+                return false;
+            T obj;
+            try {
+                if (!rs.next()) {
+                    run();
+                    return false;
+                }
+                if (bound != null) {
+                    obj = bound.map(rs);
+                } else {
+                    obj = clz.newInstance();
+                    initObj(obj, rs, null, eles);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                run();
+                throw new RollbackException(
+                        "Exception occured by class = " + clz.getName() + ", message: " + e.getMessage());
+            }
+            action.accept(obj);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                rs.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            close(pstmt);
+            close(conn);
+        }
+    }
+
     @Override
     public Object reduce(ReduceCondition reduceCondition) {
 
@@ -898,11 +1297,7 @@ public class DaoImpl implements Dao {
             List<BeanElement> eles = parsed.getBeanElementList();
             ResultSet rs = pstmt.executeQuery();
             if (rs != null) {
-                while (rs.next()) {
-                    Object obj = clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-                }
+                map(clz, rs, eles, list);
             }
 
         } catch (Exception e) {
@@ -1103,11 +1498,7 @@ public class DaoImpl implements Dao {
             ResultSet rs = pstmt.executeQuery();
 
             if (rs != null) {
-                while (rs.next()) {
-                    T obj = clz.newInstance();
-                    list.add(obj);
-                    initObj(obj, rs, tempEle, eles);
-                }
+                map(clz, rs, eles, list);
             }
 
         } catch (Exception e) {
@@ -1310,6 +1701,28 @@ public class DaoImpl implements Dao {
         ResultSetUtil.initObj(obj, rs, tempEle, eles);
     }
 
+    /**
+     * 方言有编译好的行映射时, 每个ResultSet只解析一次列序号, 否则逐行反射
+     */
+    private <T> void map(Class<T> clz, ResultSet rs, List<BeanElement> eles, List<T> list)
+            throws SQLException, IOException, IllegalAccessException, InvocationTargetException, InstantiationException {
+
+        RowMapper<T> rowMapper = this.dialect.getRowMapper(clz, eles);
+        if (rowMapper == null) {
+            while (rs.next()) {
+                T obj = clz.newInstance();
+                list.add(obj);
+                initObj(obj, rs, null, eles);
+            }
+            return;
+        }
+
+        RowMapper.Bound<T> bound = rowMapper.bind(rs);
+        while (rs.next()) {
+            list.add(bound.map(rs));
+        }
+    }
+
     protected <T> T getOne(T conditionObj, Connection conn) {
 
         List<T> list = list(conditionObj, conn);
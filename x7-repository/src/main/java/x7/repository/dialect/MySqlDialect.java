@@ -19,6 +19,7 @@ package x7.repository.dialect;
 import x7.core.bean.*;
 import x7.core.util.JsonX;
 import x7.repository.mapper.Mapper;
+import x7.repository.mapper.RowMapper;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -163,6 +164,25 @@ public class MySqlDialect implements Mapper.Dialect {
     }
 
 
+    @Override
+    public <T> RowMapper<T> getRowMapper(Class<T> clz, List<BeanElement> eles) {
+        return RowMapper.get(clz, eles);
+    }
+
+    @Override
+    public boolean isMultiRowInsert() {
+        return true;
+    }
+
+    /**
+     * 0: Integer.MIN_VALUE, 逐行读取<br>
+     * 大于0: 需要连接参数useCursorFetch=true, 否则驱动仍会读入全部结果
+     */
+    @Override
+    public void setFetchSize(int fetchSize, PreparedStatement pstmt) throws SQLException {
+        pstmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+    }
+
     public void setJSON(int i, String str, PreparedStatement pstmt) throws SQLException, IOException {
 
         pstmt.setString(i, str);
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.exception;
+
+/**
+ * createBatch某一块失败<br>
+ * 自动提交的连接上, 之前的块已经提交; 外部事务中, 由外部事务决定
+ */
+public class CreateBatchException extends RollbackException {
+
+	private static final long serialVersionUID = -3325120851834611406L;
+
+	private final int fromIndex;
+	private final int toIndex;
+	private final int createdCount;
+
+	public CreateBatchException(String message, int fromIndex, int toIndex, int createdCount) {
+		super(message);
+		this.fromIndex = fromIndex;
+		this.toIndex = toIndex;
+		this.createdCount = createdCount;
+	}
+
+	/**
+	 * 失败的块在列表里的起始位置
+	 */
+	public int getFromIndex() {
+		return fromIndex;
+	}
+
+	/**
+	 * 失败的块在列表里的结束位置, 不含
+	 */
+	public int getToIndex() {
+		return toIndex;
+	}
+
+	/**
+	 * 已经写入的对象数, 即列表前createdCount个
+	 */
+	public int getCreatedCount() {
+		return createdCount;
+	}
+}
@@ -38,6 +38,8 @@ import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Biz Repository extends DefaultRepository
@@ -227,6 +229,36 @@ public abstract class DefaultRepository<T> implements BaseRepository<T> {
         SqlRepository.getInstance().remove(obj);
     }
 
+    @Override
+    public boolean[] refreshBatch(List<T> objList) {
+
+        Parsed parsed = Parser.get(this.clz);
+        Field keyField = parsed.getKeyField(X.KEY_ONE);
+
+        if (Objects.isNull(keyField))
+            throw new RuntimeException("No PrimaryKey, UnSafe Refresh, try to invoke DefaultRepository.refreshUnSafe(RefreshCondition<T> refreshCondition)");
+
+        keyField.setAccessible(true);
+        for (T obj : objList) {
+            Object value;
+            try {
+                value = keyField.get(obj);
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new RuntimeException("refresh safe, get keyOne exception");
+            }
+            if (Objects.isNull(value) || value.toString().equals("0"))
+                throw new RuntimeException("UnSafe Refresh, try to invoke DefaultRepository.refreshUnSafe(RefreshCondition<T> refreshCondition)");
+        }
+
+        return SqlRepository.getInstance().refreshBatch(objList);
+    }
+
+    @Override
+    public boolean[] removeBatch(List<T> objList) {
+        return SqlRepository.getInstance().removeBatch(objList);
+    }
+
     @Override
     public T get(long idOne) {
 
@@ -312,6 +344,24 @@ public abstract class DefaultRepository<T> implements BaseRepository<T> {
         return SqlRepository.getInstance().list(criteria);
     }
 
+    @Override
+    public Stream<T> stream(Criteria criteria) {
+
+        if (criteria instanceof Criteria.ResultMappedCriteria)
+            throw new RuntimeException("Codeing Exception: maybe {Criteria.ResultMappedCriteria criteria = builder.get();} instead of {Criteria criteria = builder.get();}");
+
+        return SqlRepository.getInstance().stream(criteria);
+    }
+
+    @Override
+    public void forEach(Criteria criteria, Consumer<T> consumer) {
+
+        if (criteria instanceof Criteria.ResultMappedCriteria)
+            throw new RuntimeException("Codeing Exception: maybe {Criteria.ResultMappedCriteria criteria = builder.get();} instead of {Criteria criteria = builder.get();}");
+
+        SqlRepository.getInstance().forEach(criteria, consumer);
+    }
+
 
     @Override
     public <WITH> List<DomainObject<T, WITH>> listDomainObject(Criteria.DomainObjectCriteria domainObjectCriteria) {
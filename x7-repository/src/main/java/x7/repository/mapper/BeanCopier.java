@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.mapper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ *
+ * 按getter/setter复制对象, 每个实体类编译一次(Lambdas)<br>
+ * 属性浅拷贝, Date另外复制; 集合等其他可变属性仍是同一个实例<br>
+ * @author Sim
+ */
+public class BeanCopier<T> {
+
+    private final static Map<Class, BeanCopier> copierMap = new ConcurrentHashMap<>();
+
+    private final Supplier<T> constructor;
+    private final Property[] properties;
+
+    @SuppressWarnings("unchecked")
+    public static <T> BeanCopier<T> get(Class<T> clz) {
+        BeanCopier<T> copier = copierMap.get(clz);
+        if (copier == null) {
+            copier = new BeanCopier<>(clz);
+            copierMap.put(clz, copier);
+        }
+        return copier;
+    }
+
+    private BeanCopier(Class<T> clz) {
+        boolean isVisible = Lambdas.isVisible(clz);
+        this.constructor = Lambdas.constructor(clz, isVisible);
+        List<Property> propertyList = new ArrayList<>();
+        for (Method getter : clz.getMethods()) {
+            Method setter = setterOf(clz, getter);
+            if (setter == null)
+                continue;
+            propertyList.add(new Property(
+                    Lambdas.getter(getter, Function.class, isVisible),
+                    Lambdas.setter(setter, BiConsumer.class, isVisible)));
+        }
+        this.properties = propertyList.toArray(new Property[propertyList.size()]);
+    }
+
+    /**
+     * @return null: 不是getter, 或没有对应的setter
+     */
+    private static Method setterOf(Class clz, Method getter) {
+        if (getter.getParameterCount() != 0 || Modifier.isStatic(getter.getModifiers()))
+            return null;
+        String name = getter.getName();
+        String property;
+        if (name.startsWith("get") && name.length() > 3 && !name.equals("getClass"))
+            property = name.substring(3);
+        else if (name.startsWith("is") && name.length() > 2 && getter.getReturnType() == boolean.class)
+            property = name.substring(2);
+        else
+            return null;
+        try {
+            Method setter = clz.getMethod("set" + property, getter.getReturnType());
+            return Modifier.isStatic(setter.getModifiers()) ? null : setter;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T copy(T obj) {
+        if (obj == null)
+            return null;
+        T copy = this.constructor.get();
+        for (Property property : this.properties) {
+            Object value = property.getter.apply(obj);
+            if (value instanceof Date)
+                value = ((Date) value).clone();
+            property.setter.accept(copy, value);
+        }
+        return copy;
+    }
+
+    private static class Property {
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+
+        private Property(Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
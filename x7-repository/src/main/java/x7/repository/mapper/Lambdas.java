@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.mapper;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * 用LambdaMetafactory把构造, getter, setter编译成函数接口, 供RowMapper和StatementBinder使用<br>
+ * 实体类对x7的类加载器不可见时, 退回MethodHandle<br>
+ * @author Sim
+ */
+final class Lambdas {
+
+    private final static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Lambdas() {
+    }
+
+    /**
+     * 实体类能否从x7的类加载器加载, LambdaMetafactory生成的类需要链接到实体类
+     */
+    static boolean isVisible(Class clz) {
+        try {
+            return Class.forName(clz.getName(), false, Lambdas.class.getClassLoader()) == clz;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> constructor(final Class<T> clz, boolean isVisible) {
+        try {
+            MethodHandle handle = LOOKUP.findConstructor(clz, MethodType.methodType(void.class));
+            if (isVisible) {
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class), handle, MethodType.methodType(clz));
+                return (Supplier<T>) site.getTarget().invoke();
+            }
+            final MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+            return new Supplier<T>() {
+                @Override
+                public T get() {
+                    try {
+                        return (T) generic.invokeExact();
+                    } catch (Throwable e) {
+                        throw new IllegalStateException("new " + clz.getName() + " failed: " + e.getMessage(), e);
+                    }
+                }
+            };
+        } catch (Throwable e) {
+            throw new IllegalStateException("no public constructor without parameters: " + clz.getName(), e);
+        }
+    }
+
+    /**
+     * @param fi BiConsumer, ObjLongConsumer, ObjIntConsumer, ObjDoubleConsumer
+     */
+    @SuppressWarnings("unchecked")
+    static <F> F setter(Method method, Class<F> fi, boolean isVisible) {
+        MethodType samType;
+        if (fi == ObjLongConsumer.class)
+            samType = MethodType.methodType(void.class, Object.class, long.class);
+        else if (fi == ObjIntConsumer.class)
+            samType = MethodType.methodType(void.class, Object.class, int.class);
+        else if (fi == ObjDoubleConsumer.class)
+            samType = MethodType.methodType(void.class, Object.class, double.class);
+        else
+            samType = MethodType.methodType(void.class, Object.class, Object.class);
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method);
+            if (isVisible) {
+                Class<?> parameterType = method.getParameterTypes()[0];
+                if (parameterType.isPrimitive() && !samType.parameterType(1).isPrimitive())
+                    parameterType = MethodType.methodType(parameterType).wrap().returnType();
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept", MethodType.methodType(fi),
+                        samType, handle, MethodType.methodType(void.class, method.getDeclaringClass(), parameterType));
+                return (F) site.getTarget().invoke();
+            }
+            return (F) wrapSetter(handle.asType(samType), fi);
+        } catch (Throwable e) {
+            throw new IllegalStateException("compile setter failed: " + method, e);
+        }
+    }
+
+    /**
+     * @param fi Function, ToLongFunction, ToIntFunction, ToDoubleFunction
+     */
+    @SuppressWarnings("unchecked")
+    static <F> F getter(Method method, Class<F> fi, boolean isVisible) {
+        MethodType samType;
+        String name;
+        if (fi == ToLongFunction.class) {
+            samType = MethodType.methodType(long.class, Object.class);
+            name = "applyAsLong";
+        } else if (fi == ToIntFunction.class) {
+            samType = MethodType.methodType(int.class, Object.class);
+            name = "applyAsInt";
+        } else if (fi == ToDoubleFunction.class) {
+            samType = MethodType.methodType(double.class, Object.class);
+            name = "applyAsDouble";
+        } else {
+            samType = MethodType.methodType(Object.class, Object.class);
+            name = "apply";
+        }
+        try {
+            MethodHandle handle = LOOKUP.unreflect(method);
+            if (isVisible) {
+                Class<?> returnType = method.getReturnType();
+                if (returnType.isPrimitive() && !samType.returnType().isPrimitive())
+                    returnType = MethodType.methodType(returnType).wrap().returnType();
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, name, MethodType.methodType(fi),
+                        samType, handle, MethodType.methodType(returnType, method.getDeclaringClass()));
+                return (F) site.getTarget().invoke();
+            }
+            return (F) wrapGetter(handle.asType(samType), fi);
+        } catch (Throwable e) {
+            throw new IllegalStateException("compile getter failed: " + method, e);
+        }
+    }
+
+    private static Object wrapSetter(final MethodHandle handle, Class fi) {
+        if (fi == ObjLongConsumer.class) {
+            return new ObjLongConsumer<Object>() {
+                @Override
+                public void accept(Object obj, long value) {
+                    try {
+                        handle.invokeExact(obj, value);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        if (fi == ObjIntConsumer.class) {
+            return new ObjIntConsumer<Object>() {
+                @Override
+                public void accept(Object obj, int value) {
+                    try {
+                        handle.invokeExact(obj, value);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        if (fi == ObjDoubleConsumer.class) {
+            return new ObjDoubleConsumer<Object>() {
+                @Override
+                public void accept(Object obj, double value) {
+                    try {
+                        handle.invokeExact(obj, value);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        return new BiConsumer<Object, Object>() {
+            @Override
+            public void accept(Object obj, Object value) {
+                try {
+                    handle.invokeExact(obj, value);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    private static Object wrapGetter(final MethodHandle handle, Class fi) {
+        if (fi == ToLongFunction.class) {
+            return new ToLongFunction<Object>() {
+                @Override
+                public long applyAsLong(Object obj) {
+                    try {
+                        return (long) handle.invokeExact(obj);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        if (fi == ToIntFunction.class) {
+            return new ToIntFunction<Object>() {
+                @Override
+                public int applyAsInt(Object obj) {
+                    try {
+                        return (int) handle.invokeExact(obj);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        if (fi == ToDoubleFunction.class) {
+            return new ToDoubleFunction<Object>() {
+                @Override
+                public double applyAsDouble(Object obj) {
+                    try {
+                        return (double) handle.invokeExact(obj);
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }
+            };
+        }
+        return new Function<Object, Object>() {
+            @Override
+            public Object apply(Object obj) {
+                try {
+                    return (Object) handle.invokeExact(obj);
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+}
@@ -105,6 +105,30 @@ public interface Mapper {
 
         <T> void initObj(T obj, ResultSet rs, BeanElement tempEle, List<BeanElement> eles) throws IOException, SQLException, InvocationTargetException, IllegalAccessException;
 
+        /**
+         * 编译好的行映射<br>
+         * @return null: 逐行调用initObj
+         */
+        default <T> RowMapper<T> getRowMapper(Class<T> clz, List<BeanElement> eles) {
+            return null;
+        }
+
+        /**
+         * 是否支持INSERT ... VALUES (...),(...)
+         */
+        default boolean isMultiRowInsert() {
+            return false;
+        }
+
+        /**
+         * 流式查询时设置fetchSize<br>
+         * @param fetchSize 0: 用驱动的默认值
+         */
+        default void setFetchSize(int fetchSize, PreparedStatement pstmt) throws SQLException {
+            if (fetchSize > 0)
+                pstmt.setFetchSize(fetchSize);
+        }
+
         void setObject(int i, Object obj, PreparedStatement pstm) throws SQLException ;
 
 
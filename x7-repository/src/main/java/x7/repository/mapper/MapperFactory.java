@@ -99,6 +99,9 @@ public class MapperFactory implements Mapper {
 			sql.getLoadSql(clz);
 			sql.getCreateSql(clz);
 			sql.getTagSql(clz);
+			StatementBinder.get(clz, getElementList(clz));
+			if (Dialect != null)
+				Dialect.getRowMapper(clz, getElementList(clz));
 			return;
 		}
 
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.mapper;
+
+import x7.core.bean.BeanElement;
+import x7.core.util.JsonX;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ *
+ * 实体类的行映射, 每个实体类编译一次<br>
+ * setter和无参构造编译成函数接口(Lambdas), 不再Method.invoke<br>
+ * 每个ResultSet只解析一次列序号, 按字段类型用getLong, getString等取值<br>
+ * @author Sim
+ */
+public class RowMapper<T> {
+
+    private final static Map<Class, RowMapper> rowMapperMap = new ConcurrentHashMap<>();
+
+    private final List<BeanElement> eles;
+    private final Supplier<T> constructor;
+    private final Column[] columns;
+
+    /**
+     * 取已编译的行映射, 元素列表变化时重新编译
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> get(Class<T> clz, List<BeanElement> eles) {
+        RowMapper<T> rowMapper = rowMapperMap.get(clz);
+        if (rowMapper == null || rowMapper.eles != eles) {
+            rowMapper = new RowMapper<>(clz, eles);
+            rowMapperMap.put(clz, rowMapper);
+        }
+        return rowMapper;
+    }
+
+    private RowMapper(Class<T> clz, List<BeanElement> eles) {
+        this.eles = eles;
+        boolean isVisible = Lambdas.isVisible(clz);
+        this.constructor = Lambdas.constructor(clz, isVisible);
+        List<Column> columnList = new ArrayList<>(eles.size());
+        for (BeanElement ele : eles) {
+            if (ele.setMethod == null)
+                continue;
+            columnList.add(compile(ele, isVisible));
+        }
+        this.columns = columnList.toArray(new Column[columnList.size()]);
+    }
+
+    /**
+     * 按列名解析一次列序号
+     */
+    public Bound<T> bind(ResultSet rs) throws SQLException {
+        int[] indexes = new int[this.columns.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = rs.findColumn(this.columns[i].label);
+        }
+        return new Bound<>(this, indexes);
+    }
+
+    public static class Bound<T> {
+
+        private final RowMapper<T> rowMapper;
+        private final int[] indexes;
+
+        private Bound(RowMapper<T> rowMapper, int[] indexes) {
+            this.rowMapper = rowMapper;
+            this.indexes = indexes;
+        }
+
+        /**
+         * 映射当前行
+         */
+        public T map(ResultSet rs) throws SQLException {
+            T obj = this.rowMapper.constructor.get();
+            Column[] columns = this.rowMapper.columns;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].read(obj, rs, this.indexes[i]);
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * 读一列, 设置到对象<br>
+     * 基本类型的列为null时不设置, 其他类型设置null
+     */
+    private abstract static class Column {
+
+        private final String label;
+
+        Column(String label) {
+            this.label = label;
+        }
+
+        abstract void read(Object obj, ResultSet rs, int index) throws SQLException;
+    }
+
+    private static String labelOf(BeanElement ele) {
+        String mapper = ele.getMapper();
+        if (mapper.contains("`"))
+            mapper = mapper.replace("`", "");
+        return mapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Column compile(final BeanElement ele, boolean isVisible) {
+        final Class ec = ele.clz;
+        final String label = labelOf(ele);
+        Method method = ele.setMethod;
+
+        if (ec == long.class) {
+            final ObjLongConsumer<Object> setter = Lambdas.setter(method, ObjLongConsumer.class, isVisible);
+            return new Column(label) {
+                @Override
+                void read(Object obj, ResultSet rs, int index) throws SQLException {
+                    long value = rs.getLong(index);
+                    if (!rs.wasNull())
+                        setter.accept(obj, value);
+                }
+            };
+        }
+        if (ec == int.class) {
+            final ObjIntConsumer<Object> setter = Lambdas.setter(method, ObjIntConsumer.class, isVisible);
+            return new Column(label) {
+                @Override
+                void read(Object obj, ResultSet rs, int index) throws SQLException {
+                    int value = rs.getInt(index);
+                    if (!rs.wasNull())
+                        setter.accept(obj, value);
+                }
+            };
+        }
+        if (ec == double.class) {
+            final ObjDoubleConsumer<Object> setter = Lambdas.setter(method, ObjDoubleConsumer.class, isVisible);
+            return new Column(label) {
+                @Override
+                void read(Object obj, ResultSet rs, int index) throws SQLException {
+                    double value = rs.getDouble(index);
+                    if (!rs.wasNull())
+                        setter.accept(obj, value);
+                }
+            };
+        }
+
+        final BiConsumer<Object, Object> setter = Lambdas.setter(method, BiConsumer.class, isVisible);
+
+        if (ec.isPrimitive()) {
+            return new Column(label) {
+                @Override
+                void read(Object obj, ResultSet rs, int index) throws SQLException {
+                    Object value = getPrimitive(ec, rs, index);
+                    if (!rs.wasNull())
+                        setter.accept(obj, value);
+                }
+            };
+        }
+
+        return new Column(label) {
+            @Override
+            void read(Object obj, ResultSet rs, int index) throws SQLException {
+                setter.accept(obj, getObject(ele, ec, rs, index));
+            }
+        };
+    }
+
+    private static Object getPrimitive(Class ec, ResultSet rs, int index) throws SQLException {
+        if (ec == boolean.class)
+            return rs.getBoolean(index);
+        if (ec == float.class)
+            return rs.getFloat(index);
+        if (ec == short.class)
+            return rs.getShort(index);
+        if (ec == byte.class)
+            return rs.getByte(index);
+        return rs.getObject(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getObject(BeanElement ele, Class ec, ResultSet rs, int index) throws SQLException {
+        if (ec == String.class)
+            return rs.getString(index);
+        if (ec == Long.class) {
+            long value = rs.getLong(index);
+            return rs.wasNull() ? null : value;
+        }
+        if (ec == Integer.class) {
+            int value = rs.getInt(index);
+            return rs.wasNull() ? null : value;
+        }
+        if (ec == Double.class) {
+            double value = rs.getDouble(index);
+            return rs.wasNull() ? null : value;
+        }
+        if (ec == Boolean.class) {
+            boolean value = rs.getBoolean(index);
+            return rs.wasNull() ? null : value;
+        }
+        if (ec == BigDecimal.class)
+            return rs.getBigDecimal(index);
+        if (ec == Date.class || ec == java.sql.Timestamp.class)
+            return rs.getTimestamp(index);
+        if (ec == java.sql.Date.class)
+            return rs.getDate(index);
+        if (ec.isEnum()) {
+            String str = rs.getString(index);
+            return str == null ? null : Enum.valueOf(ec, str);
+        }
+        if (ele.isJson) {
+            String str = rs.getString(index);
+            if (str == null)
+                return null;
+            if (ec == List.class)
+                return JsonX.toList(str, ele.geneType);
+            if (ec == Map.class)
+                return JsonX.toMap(str);
+            return JsonX.toObject(str, ec);
+        }
+        return rs.getObject(index);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.mapper;
+
+import x7.core.bean.BeanElement;
+import x7.core.bean.SqlScript;
+import x7.core.util.JsonX;
+import x7.repository.exception.PersistenceException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ *
+ * 实体类INSERT语句的参数绑定, 每个实体类编译一次<br>
+ * getter编译成函数接口(Lambdas), 按字段类型用setLong, setString等写入PreparedStatement<br>
+ * 只有String经过dialect.filterValue<br>
+ * 空值与原来一致: 枚举不能为空, 数值和Boolean的包装类写0<br>
+ * @author Sim
+ */
+public class StatementBinder {
+
+    private final static Map<Class, StatementBinder> binderMap = new ConcurrentHashMap<>();
+
+    private final List<BeanElement> eles;
+    private final Param[] params;
+
+    /**
+     * 取已编译的参数绑定, 元素列表变化时重新编译
+     */
+    public static StatementBinder get(Class clz, List<BeanElement> eles) {
+        StatementBinder binder = binderMap.get(clz);
+        if (binder == null || binder.eles != eles) {
+            binder = new StatementBinder(clz, eles);
+            binderMap.put(clz, binder);
+        }
+        return binder;
+    }
+
+    private StatementBinder(Class clz, List<BeanElement> eles) {
+        this.eles = eles;
+        boolean isVisible = Lambdas.isVisible(clz);
+        List<Param> paramList = new ArrayList<>(eles.size());
+        for (BeanElement ele : eles) {
+            paramList.add(compile(clz, ele, isVisible));
+        }
+        this.params = paramList.toArray(new Param[paramList.size()]);
+    }
+
+    /**
+     * 按元素顺序从1开始绑定
+     * @return 下一个参数的序号
+     */
+    public int bind(PreparedStatement pstmt, Object obj, Mapper.Dialect dialect) throws SQLException, IOException {
+        return bind(pstmt, 1, obj, dialect);
+    }
+
+    /**
+     * 多行VALUES时, 从start开始绑定
+     * @return 下一个参数的序号
+     */
+    public int bind(PreparedStatement pstmt, int start, Object obj, Mapper.Dialect dialect) throws SQLException, IOException {
+        int i = start;
+        for (Param param : this.params) {
+            param.bind(pstmt, i++, obj, dialect);
+        }
+        return i;
+    }
+
+    /**
+     * 估算一行参数编码后的字节数, 用于限制多行INSERT的包大小
+     */
+    public long estimate(Object obj) {
+        long bytes = 0;
+        for (Param param : this.params) {
+            bytes += param.estimate(obj);
+        }
+        return bytes;
+    }
+
+    private abstract static class Param {
+        abstract void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException, IOException;
+
+        /**
+         * 定长类型按8字节
+         */
+        int estimate(Object obj) {
+            return 8;
+        }
+    }
+
+    /**
+     * 按UTF-8最长3字节一个字符估算, 加上引号
+     */
+    private static int estimateString(String value) {
+        return value == null ? 4 : value.length() * 3 + 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Param compile(final Class clz, final BeanElement ele, boolean isVisible) {
+        final Class ec = ele.clz;
+
+        if (ec == long.class) {
+            final ToLongFunction<Object> getter = Lambdas.getter(ele.getMethod, ToLongFunction.class, isVisible);
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    pstmt.setLong(i, getter.applyAsLong(obj));
+                }
+            };
+        }
+        if (ec == int.class) {
+            final ToIntFunction<Object> getter = Lambdas.getter(ele.getMethod, ToIntFunction.class, isVisible);
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    pstmt.setInt(i, getter.applyAsInt(obj));
+                }
+            };
+        }
+        if (ec == double.class) {
+            final ToDoubleFunction<Object> getter = Lambdas.getter(ele.getMethod, ToDoubleFunction.class, isVisible);
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    pstmt.setDouble(i, getter.applyAsDouble(obj));
+                }
+            };
+        }
+
+        final Function<Object, Object> getter = Lambdas.getter(ele.getMethod, Function.class, isVisible);
+
+        if (ele.isJson) {
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException, IOException {
+                    Object value = getter.apply(obj);
+                    if (value == null)
+                        pstmt.setObject(i, null);
+                    else
+                        dialect.setJSON(i, JsonX.toJson(value), pstmt);
+                }
+
+                @Override
+                int estimate(Object obj) {
+                    Object value = getter.apply(obj);
+                    return value == null ? 4 : estimateString(JsonX.toJson(value));
+                }
+            };
+        }
+        if (ec.isEnum()) {
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    Object value = getter.apply(obj);
+                    if (value == null)
+                        throw new PersistenceException(
+                                "ENUM CAN NOT NULL, property:" + clz.getName() + SqlScript.POINT + ele.getProperty());
+                    pstmt.setString(i, value.toString());
+                }
+            };
+        }
+        if (ec == String.class) {
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    Object value = getter.apply(obj);
+                    if (value == null) {
+                        pstmt.setObject(i, null);
+                        return;
+                    }
+                    value = dialect.filterValue(value);
+                    if (value instanceof String)
+                        pstmt.setString(i, (String) value);
+                    else
+                        pstmt.setObject(i, value);
+                }
+
+                @Override
+                int estimate(Object obj) {
+                    return estimateString((String) getter.apply(obj));
+                }
+            };
+        }
+        if (ec == Long.class || ec == Integer.class || ec == Double.class || ec == Float.class
+                || ec == Short.class || ec == Byte.class || ec == BigDecimal.class || ec == Boolean.class) {
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    setNumber(pstmt, i, getter.apply(obj));
+                }
+            };
+        }
+        if (ec == Date.class) {
+            return new Param() {
+                @Override
+                void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                    Date value = (Date) getter.apply(obj);
+                    if (value == null)
+                        pstmt.setObject(i, null);
+                    else if (value instanceof Timestamp)
+                        pstmt.setTimestamp(i, (Timestamp) value);
+                    else if (value instanceof java.sql.Date)
+                        pstmt.setDate(i, (java.sql.Date) value);
+                    else
+                        pstmt.setTimestamp(i, new Timestamp(value.getTime()));
+                }
+            };
+        }
+        return new Param() {
+            @Override
+            void bind(PreparedStatement pstmt, int i, Object obj, Mapper.Dialect dialect) throws SQLException {
+                Object value = getter.apply(obj);
+                pstmt.setObject(i, value == null ? null : dialect.filterValue(value));
+            }
+
+            @Override
+            int estimate(Object obj) {
+                Object value = getter.apply(obj);
+                if (value instanceof byte[])
+                    return ((byte[]) value).length * 2 + 3;
+                if (value instanceof CharSequence)
+                    return estimateString(value.toString());
+                return 8;
+            }
+        };
+    }
+
+    /**
+     * 包装类为null时写0
+     */
+    private static void setNumber(PreparedStatement pstmt, int i, Object value) throws SQLException {
+        if (value == null)
+            pstmt.setInt(i, 0);
+        else if (value instanceof Long)
+            pstmt.setLong(i, (Long) value);
+        else if (value instanceof Integer)
+            pstmt.setInt(i, (Integer) value);
+        else if (value instanceof Double)
+            pstmt.setDouble(i, (Double) value);
+        else if (value instanceof BigDecimal)
+            pstmt.setBigDecimal(i, (BigDecimal) value);
+        else if (value instanceof Boolean)
+            pstmt.setBoolean(i, (Boolean) value);
+        else
+            pstmt.setObject(i, value);
+    }
+}
@@ -16,12 +16,34 @@
  */
 package x7.repository.redis;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import x7.config.SpringHelper;
+import x7.core.exception.CacheException;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class JedisConnector_Cache {
 
@@ -31,6 +53,11 @@ public class JedisConnector_Cache {
 	
 	private static JedisConnector_Cache instance;
 
+	private volatile Boolean isCluster;
+	private volatile ExecutorService batchExecutor;
+	private static int mgetChunkSize = 500;
+	private static int msetChunkSize = 500;
+
 	
 	public static JedisConnector_Cache getInstance(){
 		if (instance == null){
@@ -40,6 +67,17 @@ public class JedisConnector_Cache {
 		return instance;
 	}
 
+	/**
+	 * 批量读写按块拆分, 各块并行发送, 避免一次往返返回过大的结果, 阻塞同一连接上的其他命令<br>
+	 * 启动时设置, 不需要先连接redis<br>
+	 * @param mgetChunkSize 每次MGET的最大key数
+	 * @param msetChunkSize 每个pipeline的最大写命令数
+	 */
+	public static void setChunkSize(int mgetChunkSize, int msetChunkSize){
+		JedisConnector_Cache.mgetChunkSize = Math.max(mgetChunkSize, 1);
+		JedisConnector_Cache.msetChunkSize = Math.max(msetChunkSize, 1);
+	}
+
 	private void init(){
 		redisTemplate = (RedisTemplate) SpringHelper.getObject("redisTemplate");
 		stringRedisTemplate = (StringRedisTemplate)SpringHelper.getObject("stringRedisTemplate");
@@ -67,13 +105,13 @@ public class JedisConnector_Cache {
 	public boolean set(String key, String value,int validSeconds){
 		if (key == null || key.equals("") )
 			return false;
-		this.stringRedisTemplate.opsForValue().set(key, value,validSeconds);
+		this.stringRedisTemplate.opsForValue().set(key, value, validSeconds, TimeUnit.SECONDS);
 		return true;
 	}
 	
 	public boolean set(byte[] key, byte[] value, int validSeconds){
 
-		this.redisTemplate.opsForValue().set(key, value,validSeconds);
+		this.redisTemplate.opsForValue().set(key, value, validSeconds, TimeUnit.SECONDS);
 		return true;
 	}
 	
@@ -128,6 +166,299 @@ public class JedisConnector_Cache {
 		return true;
 	}
 
+	/**
+	 * pipeline删除多个key, 不要求在同一个slot
+	 */
+	public void delete(final List<String> keyList){
+		if (keyList == null || keyList.isEmpty())
+			return;
+		int size = keyList.size();
+		int chunkSize = msetChunkSize;
+		for (int fromIndex = 0; fromIndex < size; fromIndex += chunkSize) {
+			final List<String> subList = keyList.subList(fromIndex, Math.min(fromIndex + chunkSize, size));
+			this.stringRedisTemplate.executePipelined(new RedisCallback<Object>() {
+				@Override
+				public Object doInRedis(RedisConnection connection) throws DataAccessException {
+					for (String key : subList) {
+						connection.del(key.getBytes(StandardCharsets.UTF_8));
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * 直接读写byte[], 不经过template的序列化
+	 */
+	public byte[] getBytes(final String key){
+
+		return this.stringRedisTemplate.execute(new RedisCallback<byte[]>() {
+			@Override
+			public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+				return connection.get(key.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+	}
+
+	/**
+	 * 一次往返取值和剩余毫秒数(PTTL)
+	 * @return [byte[] value, Long pttl]
+	 */
+	public List<Object> getBytesWithTtl(final String key){
+
+		final byte[] k = key.getBytes(StandardCharsets.UTF_8);
+		return this.stringRedisTemplate.executePipelined(new RedisCallback<Object>() {
+			@Override
+			public Object doInRedis(RedisConnection connection) throws DataAccessException {
+				connection.get(k);
+				connection.pTtl(k);
+				return null;
+			}
+		}, RedisSerializer.byteArray());
+	}
+
+	public boolean setBytes(final String key, final byte[] value, final int validSeconds){
+		if (key == null || key.equals("") )
+			return false;
+		this.stringRedisTemplate.execute(new RedisCallback<Boolean>() {
+			@Override
+			public Boolean doInRedis(RedisConnection connection) throws DataAccessException {
+				byte[] k = key.getBytes(StandardCharsets.UTF_8);
+				if (validSeconds > 0)
+					return connection.setEx(k, validSeconds, value);
+				return connection.set(k, value);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * pipeline写多个key, validSecondList与keyList一一对应<br>
+	 * 超过msetChunkSize时分成多个pipeline并行发送
+	 */
+	public void setBytes(final List<String> keyList, final List<byte[]> valueList, final List<Integer> validSecondList){
+		if (keyList == null || keyList.isEmpty())
+			return;
+		int size = keyList.size();
+		int chunkSize = msetChunkSize;
+		List<Future<?>> futureList = new ArrayList<>();
+		for (int fromIndex = chunkSize; fromIndex < size; fromIndex += chunkSize) {
+			final int from = fromIndex;
+			final int to = Math.min(fromIndex + chunkSize, size);
+			futureList.add(getBatchExecutor().submit(new Runnable() {
+				@Override
+				public void run() {
+					setBytes(keyList, valueList, validSecondList, from, to);
+				}
+			}));
+		}
+		setBytes(keyList, valueList, validSecondList, 0, Math.min(chunkSize, size));
+		await(futureList, "mset");
+	}
+
+	private void setBytes(final List<String> keyList, final List<byte[]> valueList, final List<Integer> validSecondList, final int fromIndex, final int toIndex){
+		this.stringRedisTemplate.executePipelined(new RedisCallback<Object>() {
+			@Override
+			public Object doInRedis(RedisConnection connection) throws DataAccessException {
+				for (int i = fromIndex; i < toIndex; i++) {
+					byte[] k = keyList.get(i).getBytes(StandardCharsets.UTF_8);
+					int validSeconds = validSecondList.get(i);
+					if (validSeconds > 0)
+						connection.setEx(k, validSeconds, valueList.get(i));
+					else
+						connection.set(k, valueList.get(i));
+				}
+				return null;
+			}
+		});
+	}
+
+	public List<byte[]> mgetBytes(List<String> keyList){
+
+		if (keyList == null || keyList.isEmpty())
+			return null;
+
+		byte[][] keys = new byte[keyList.size()][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = keyList.get(i).getBytes(StandardCharsets.UTF_8);
+		}
+		if (keys.length == 1)
+			return mget(keys);
+		if (!isCluster()) {
+			if (keys.length <= mgetChunkSize)
+				return mget(keys);
+			List<Integer> indexList = new ArrayList<>(keys.length);
+			for (int i = 0; i < keys.length; i++) {
+				indexList.add(i);
+			}
+			List<List<Integer>> groupList = new ArrayList<>();
+			groupList.add(indexList);
+			return mget(keys, chunk(groupList));
+		}
+		return mgetBySlot(keys);
+	}
+
+	private List<byte[]> mget(final byte[][] keys){
+		return this.stringRedisTemplate.execute(new RedisCallback<List<byte[]>>() {
+			@Override
+			public List<byte[]> doInRedis(RedisConnection connection) throws DataAccessException {
+				return connection.mGet(keys);
+			}
+		});
+	}
+
+	private boolean isCluster(){
+		Boolean isCluster = this.isCluster;
+		if (isCluster == null) {
+			isCluster = this.stringRedisTemplate.execute(new RedisCallback<Boolean>() {
+				@Override
+				public Boolean doInRedis(RedisConnection connection) throws DataAccessException {
+					return connection instanceof RedisClusterConnection;
+				}
+			});
+			this.isCluster = isCluster;
+		}
+		return isCluster;
+	}
+
+	private ExecutorService getBatchExecutor(){
+		if (this.batchExecutor == null) {
+			synchronized (this) {
+				if (this.batchExecutor == null) {
+					this.batchExecutor = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors(), 4), new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "x7-L2-batch");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+				}
+			}
+		}
+		return this.batchExecutor;
+	}
+
+	/**
+	 * Redis Cluster下按slot分组, 每组一次MGET, 各组并行发往所在节点<br>
+	 * 只有一个key的slot合成一组, 由驱动逐个查询<br>
+	 * 超过mgetChunkSize的组再拆分
+	 */
+	private List<byte[]> mgetBySlot(final byte[][] keys){
+
+		Map<Integer, List<Integer>> slotMap = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			int slot = ClusterSlotHashUtil.calculateSlot(keys[i]);
+			List<Integer> indexList = slotMap.get(slot);
+			if (indexList == null) {
+				indexList = new ArrayList<>();
+				slotMap.put(slot, indexList);
+			}
+			indexList.add(i);
+		}
+		if (slotMap.size() == 1 && keys.length <= mgetChunkSize)
+			return mget(keys);
+
+		List<List<Integer>> groupList = new ArrayList<>();
+		List<Integer> singleList = new ArrayList<>();
+		for (List<Integer> indexList : slotMap.values()) {
+			if (indexList.size() == 1)
+				singleList.add(indexList.get(0));
+			else
+				groupList.add(indexList);
+		}
+		if (!singleList.isEmpty())
+			groupList.add(singleList);
+
+		return mget(keys, chunk(groupList));
+	}
+
+	private List<List<Integer>> chunk(List<List<Integer>> groupList){
+		int chunkSize = mgetChunkSize;
+		List<List<Integer>> chunkList = new ArrayList<>();
+		for (List<Integer> indexList : groupList) {
+			for (int fromIndex = 0, size = indexList.size(); fromIndex < size; fromIndex += chunkSize) {
+				chunkList.add(indexList.subList(fromIndex, Math.min(fromIndex + chunkSize, size)));
+			}
+		}
+		return chunkList;
+	}
+
+	/**
+	 * 每组一次MGET, 第一组在当前线程执行, 其他组并行
+	 */
+	private List<byte[]> mget(final byte[][] keys, List<List<Integer>> groupList){
+
+		final byte[][] valueArr = new byte[keys.length][];
+		List<Future<?>> futureList = new ArrayList<>();
+		for (int g = 1, size = groupList.size(); g < size; g++) {
+			final List<Integer> indexList = groupList.get(g);
+			futureList.add(getBatchExecutor().submit(new Runnable() {
+				@Override
+				public void run() {
+					mget(keys, indexList, valueArr);
+				}
+			}));
+		}
+		mget(keys, groupList.get(0), valueArr);
+
+		await(futureList, "mget");
+		return Arrays.asList(valueArr);
+	}
+
+	private void await(List<Future<?>> futureList, String op){
+		for (Future<?> future : futureList) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CacheException(op + " interrupted");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new CacheException(op + " failed: " + cause.getMessage());
+			}
+		}
+	}
+
+	private void mget(byte[][] keys, List<Integer> indexList, byte[][] valueArr){
+		byte[][] groupKeys = new byte[indexList.size()][];
+		for (int j = 0; j < groupKeys.length; j++) {
+			groupKeys[j] = keys[indexList.get(j)];
+		}
+		List<byte[]> valueList = mget(groupKeys);
+		if (valueList == null)
+			return;
+		for (int j = 0; j < groupKeys.length; j++) {
+			valueArr[indexList.get(j)] = valueList.get(j);
+		}
+	}
+
+	/**
+	 * EVALSHA, 脚本未加载时自动EVAL<br>
+	 * 返回值不做反序列化
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public List<byte[]> evalBytes(RedisScript<List> script, List<String> keyList, Object... args){
+
+		RedisSerializer resultSerializer = RedisSerializer.byteArray();
+		return (List<byte[]>) this.stringRedisTemplate.execute(script, this.stringRedisTemplate.getStringSerializer(), resultSerializer, keyList, args);
+	}
+
+	public boolean setIfAbsent(String key, String value, long validMillis){
+
+		Boolean flag = this.stringRedisTemplate.opsForValue().setIfAbsent(key, value, validMillis, TimeUnit.MILLISECONDS);
+		return flag != null && flag;
+	}
+
+	public long incr(String key){
+
+		Long value = this.stringRedisTemplate.opsForValue().increment(key, 1);
+		return value == null ? 0 : value;
+	}
+
 	public Set<String> keys(String pattern){
 
 		Set<String> set = this.stringRedisTemplate.keys(pattern);
@@ -135,4 +466,18 @@ public class JedisConnector_Cache {
 		return set;
 	}
 
+	public void publish(String channel, String message){
+
+		this.stringRedisTemplate.convertAndSend(channel, message);
+	}
+
+	public void subscribe(String channel, MessageListener listener){
+
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(this.stringRedisTemplate.getConnectionFactory());
+		container.addMessageListener(listener, new ChannelTopic(channel));
+		container.afterPropertiesSet();
+		container.start();
+	}
+
 }
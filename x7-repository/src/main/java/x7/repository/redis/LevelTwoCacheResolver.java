@@ -18,18 +18,44 @@ package x7.repository.redis;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import x7.core.async.CasualWorker;
+import x7.core.async.IAsyncTask;
+import x7.core.bean.Criteria;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
 import x7.core.exception.CacheException;
 import x7.core.repository.CacheResolver;
 import x7.core.util.JsonX;
 import x7.core.util.StringUtil;
 import x7.core.util.VerifyUtil;
 import x7.core.web.Page;
+import x7.repository.cache.CacheCodec;
+import x7.repository.cache.HotKeyDetector;
+import x7.repository.cache.JsonCacheCodec;
+import x7.repository.cache.L2CacheMetrics;
+import x7.repository.cache.NearCache;
+import x7.repository.cache.QueryDependency;
 import x7.repository.exception.PersistenceException;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -42,6 +68,77 @@ public class LevelTwoCacheResolver implements CacheResolver {
 
 	private final static Logger logger = LoggerFactory.getLogger(LevelTwoCacheResolver.class);
 	public final static String NANO_SECOND = ".ns.";
+	public final static String GENERATION = ".gen.";
+	public final static String CHANNEL = "x7.L2.invalidation";
+
+	private final static String NODE_ID = UUID.randomUUID().toString();
+	private final static String REMOVE = "r";
+	private final static String CLEAR = "c";
+	private final static String REFRESH = "n";
+	private final static String KEY = "k";
+	private final static String QUERY = "q";
+	private final static String MAPPED_REFRESH = "m";
+	private final static String MAPPED = ".mapped.";
+	private final static String RESULT_MAPPED = ".rm.";
+	private final static String LEASE = ".lease";
+	private final static String UNIQUE = "uk.";
+
+	/**
+	 * KEYS[1]: 结果Key; ARGV[1]: 1 分页; ARGV[2]: 对象Key前缀<br>
+	 * 返回 {结果Key的值, 对象1, 对象2, ...}, 结果Key不存在时返回空<br>
+	 * 对象Key与结果Key在同一个{类名}hash tag下, keyBuckets=1时在Cluster的同一个slot<br>
+	 * 命名空间和代次取本地版本, 命中时只需一次EVALSHA
+	 */
+	private final static String RESULT_KEY_LUA =
+			"local v = redis.call('GET', KEYS[1]) " +
+			"if not v then return {} end " +
+			"local keys = cjson.decode(v) " +
+			"if ARGV[1] == '1' then keys = keys['keyList'] end " +
+			"local result = {v} " +
+			"if type(keys) ~= 'table' then return result end " +
+			"local size = #keys " +
+			"for i = 1, size, 1000 do " +
+			"  local ks = {} " +
+			"  for j = i, math.min(i + 999, size) do ks[#ks + 1] = ARGV[2] .. keys[j] end " +
+			"  local vals = redis.call('MGET', unpack(ks)) " +
+			"  for j = 1, #ks do result[#result + 1] = vals[j] end " +
+			"end " +
+			"return result";
+	@SuppressWarnings("rawtypes")
+	private final static DefaultRedisScript<List> RESULT_KEY_SCRIPT = new DefaultRedisScript<>(RESULT_KEY_LUA, List.class);
+	private final static long SCRIPT_RETRY_MILLIS = 60000;
+
+	/**
+	 * KEYS[1]: 结果Key; KEYS[2...]: 依赖集合; ARGV[1]: 结果; ARGV[2]: 秒<br>
+	 * 写结果和登记依赖是原子的
+	 */
+	private final static String REGISTER_LUA =
+			"local ttl = tonumber(ARGV[2]) " +
+			"if ttl > 0 then redis.call('SET', KEYS[1], ARGV[1], 'EX', ttl) else redis.call('SET', KEYS[1], ARGV[1]) end " +
+			"for i = 2, #KEYS do " +
+			"  redis.call('SADD', KEYS[i], KEYS[1]) " +
+			"  if ttl > 0 then redis.call('EXPIRE', KEYS[i], ttl) end " +
+			"end " +
+			"return {}";
+	/**
+	 * KEYS: 依赖集合; 删除集合中的结果Key和集合本身, 返回删除的结果Key
+	 */
+	private final static String INVALIDATE_LUA =
+			"local keys = redis.call('SUNION', unpack(KEYS)) " +
+			"for i = 1, #keys, 1000 do " +
+			"  redis.call('DEL', unpack(keys, i, math.min(i + 999, #keys))) " +
+			"end " +
+			"redis.call('DEL', unpack(KEYS)) " +
+			"return keys";
+	@SuppressWarnings("rawtypes")
+	private final static DefaultRedisScript<List> REGISTER_SCRIPT = new DefaultRedisScript<>(REGISTER_LUA, List.class);
+	@SuppressWarnings("rawtypes")
+	private final static DefaultRedisScript<List> INVALIDATE_SCRIPT = new DefaultRedisScript<>(INVALIDATE_LUA, List.class);
+	/**
+	 * 写后再失效一次, 清除写之前已开始查库, 写之后才登记的结果
+	 */
+	private final static long INVALIDATE_AGAIN_MILLIS = 1000;
+	private final static byte[] NULL_VALUE = "null".getBytes(StandardCharsets.UTF_8);
 	
 	private static LevelTwoCacheResolver instance = null;
 	public static LevelTwoCacheResolver getInstance(){
@@ -58,8 +155,414 @@ public class LevelTwoCacheResolver implements CacheResolver {
 		logger.info("L2 Cache try to starting.... cache time = " + validSecond + "s");
 		System.out.println("\n");
 	}
-	private int getValidSecondAdjusted(){
-		return  this.validSecond;
+	/**
+	 * 实体类@X.Cache的时间, 加上随机抖动, 避免同时过期
+	 */
+	@SuppressWarnings("rawtypes")
+	private int getValidSecondAdjusted(Class clz){
+		Parsed parsed = Parser.get(clz);
+		int validSecond = parsed.getCacheTimeSeconds() > 0 ? parsed.getCacheTimeSeconds() : this.validSecond;
+		int jitterSecond = parsed.getCacheJitterSeconds();
+		if (jitterSecond > 0)
+			validSecond += ThreadLocalRandom.current().nextInt(jitterSecond + 1);
+		return  validSecond;
+	}
+
+	private final Set<String> refreshingKeySet = ConcurrentHashMap.newKeySet();
+
+	private int nullValidSecond = 10;
+	/**
+	 * 不存在的对象缓存多久
+	 */
+	public void setNullValidSecond(int nullValidSecond){
+		this.nullValidSecond = nullValidSecond;
+	}
+
+	/**
+	 * 订阅失败时, 本地的版本多久回redis读取一次
+	 */
+	private final static long UNSUBSCRIBED_STALE_MILLIS = 1000;
+	private final static long SUBSCRIBE_RETRY_MILLIS = 60000;
+	private long namespaceStaleMillis = 1000;
+	private final Map<String, Version> versionMap = new ConcurrentHashMap<>();
+	private final AtomicLong versionSeq = new AtomicLong();
+	private final static int MAX_PUBLISHER_SIZE = 1024;
+	private final AtomicLong publishSeq = new AtomicLong();
+	private final Map<String, Long> publisherSeqMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 实体代数(generation)和查询命名空间(ns)保存在本地, 由pub/sub失效消息更新<br>
+	 * 消息可能丢失, 这里是最大的不一致时间: 最长多久回redis校验一次, 0: 每次都从redis读取<br>
+	 * 订阅失败时, 最长1秒
+	 */
+	public void setNamespaceStaleMillis(long namespaceStaleMillis){
+		this.namespaceStaleMillis = namespaceStaleMillis;
+	}
+
+	private int keyBuckets = 1;
+
+	/**
+	 * 对象key的桶数, 同一个类的对象分散到多个Redis Cluster slot, 避免热点类压在一个分片上<br>
+	 * 1: 同一个类的key都在{className}下, 可以用lua脚本一次查出结果Key列表和对象<br>
+	 * 查询结果和依赖集合仍在{className}下; 所有节点须一致, 修改后旧的对象缓存不再命中
+	 */
+	public void setKeyBuckets(int keyBuckets){
+		this.keyBuckets = Math.max(keyBuckets, 1);
+		logger.info("L2 Cache key buckets = " + this.keyBuckets);
+	}
+
+	private final L2CacheMetrics metrics = L2CacheMetrics.getInstance();
+	private CacheCodec codec = new JsonCacheCodec();
+	public void setCodec(CacheCodec codec){
+		this.codec = codec;
+		logger.info("L2 Cache codec = " + codec.getClass().getName());
+	}
+
+	private NearCache<byte[]> nearCache;
+	private NearCache<String> nearQueryCache;
+	private final static long HOT_CACHE_MAX_WEIGHT = 64L * 1024L * 1024L;
+	private HotKeyDetector hotKeyDetector;
+	private NearCache<byte[]> hotCache;
+	private volatile KeyListener keyListener;
+	private volatile InvalidationListener invalidationListener;
+	private volatile boolean isSubscribed;
+	private volatile long subscribeRetryAt;
+	private volatile long scriptDisabledUntil;
+	private boolean isDependencyTracking;
+	private ScheduledExecutorService invalidateScheduler;
+
+	/**
+	 * 开启查询结果的依赖追踪, 写操作不再让整个类的查询结果失效<br>
+	 * 只分析Criteria的条件, 其他查询仍在任何写之后失效<br>
+	 * 所有节点的配置应保持一致
+	 */
+	public void setDependencyTracking(boolean isDependencyTracking){
+		this.isDependencyTracking = isDependencyTracking;
+		if (isDependencyTracking && this.invalidateScheduler == null) {
+			this.invalidateScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "x7-L2-invalidate");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		logger.info("L2 Cache dependency tracking = " + isDependencyTracking);
+	}
+
+	@Override
+	public boolean isDependencyTracking(){
+		return this.isDependencyTracking;
+	}
+
+	/**
+	 * 开启进程内近端缓存, 各节点通过redis pub/sub互相通知失效<br>
+	 * 所有节点的配置应保持一致<br>
+	 * @param maxSize 最大条数, 0: 不开启
+	 * @param maxWeightMB 最大占用内存(估算)
+	 * @param timeSeconds 近端缓存的过期时间, 消息丢失时的最大不一致时间
+	 */
+	public void setNearCache(int maxSize, int maxWeightMB, int timeSeconds){
+		if (maxSize <= 0)
+			return;
+		long maxWeight = maxWeightMB * 1024L * 1024L;
+		this.nearCache = new NearCache<>(maxSize, maxWeight, timeSeconds, new NearCache.Weigher<byte[]>() {
+			@Override
+			public int weigh(byte[] value) {
+				return value.length;
+			}
+		});
+		this.nearQueryCache = new NearCache<>(Math.max(maxSize / 10, 16), Math.max(maxWeight / 10, 1), timeSeconds, new NearCache.Weigher<String>() {
+			@Override
+			public int weigh(String value) {
+				return value.length() << 1;
+			}
+		});
+		logger.info("L2 Cache near cache enabled, maxSize = " + maxSize + ", maxWeight = " + maxWeightMB + "MB, time = " + timeSeconds + "s");
+	}
+
+	private boolean isNearCacheEnabled(){
+		if (this.nearCache == null)
+			return false;
+		if (!this.isSubscribed)
+			subscribe();
+		return this.nearCache != null;
+	}
+
+	/**
+	 * 开启热点key探测, 热点对象在进程内保留短时副本, 变冷后不再读副本<br>
+	 * 副本和近端缓存一样通过redis pub/sub失效<br>
+	 * @param threshold 单节点一个窗口内读取多少次算热点, 0: 不开启
+	 * @param windowMillis 窗口时长
+	 * @param timeSeconds 副本的过期时间, 消息丢失时的最大不一致时间
+	 * @param maxSize 热点key的最大个数
+	 */
+	public void setHotKey(int threshold, long windowMillis, int timeSeconds, int maxSize){
+		if (threshold <= 0)
+			return;
+		this.hotCache = new NearCache<>(maxSize, HOT_CACHE_MAX_WEIGHT, timeSeconds, new NearCache.Weigher<byte[]>() {
+			@Override
+			public int weigh(byte[] value) {
+				return value.length;
+			}
+		});
+		this.hotKeyDetector = new HotKeyDetector(threshold, windowMillis, maxSize);
+		this.metrics.setHotKeyDetector(this.hotKeyDetector);
+		logger.info("L2 Cache hot key enabled, threshold = " + threshold + "/" + windowMillis + "ms, time = " + timeSeconds + "s, maxSize = " + maxSize);
+	}
+
+	private boolean isHotKeyEnabled(){
+		if (this.hotCache == null)
+			return false;
+		if (!this.isSubscribed)
+			subscribe();
+		return this.hotCache != null;
+	}
+
+	/**
+	 * 订阅失败后, 每分钟重试一次
+	 */
+	private boolean isSubscribed(){
+		if (!this.isSubscribed && System.currentTimeMillis() >= this.subscribeRetryAt)
+			subscribe();
+		return this.isSubscribed;
+	}
+
+	private synchronized void subscribe(){
+		if (this.isSubscribed)
+			return;
+		try {
+			JedisConnector_Cache.getInstance().subscribe(CHANNEL, new MessageListener() {
+				@Override
+				public void onMessage(Message message, byte[] pattern) {
+					onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8));
+				}
+			});
+			this.isSubscribed = true;
+		}catch (Exception e) {
+			logger.error("L2 Cache subscribe " + CHANNEL + " failed, near cache and hot key disabled: " + e.getMessage());
+			this.subscribeRetryAt = System.currentTimeMillis() + SUBSCRIBE_RETRY_MILLIS;
+			this.nearCache = null;
+			this.nearQueryCache = null;
+			this.hotCache = null;
+			this.hotKeyDetector = null;
+			this.metrics.setHotKeyDetector(null);
+		}
+	}
+
+	/**
+	 * CLEAR, REFRESH总是发出, 其他节点据此更新本地的实体代数和命名空间<br>
+	 * 消息格式: 节点|序号|类型|内容, 序号不连续说明有消息丢失
+	 */
+	private void publish(String type, String payload){
+		long seq = this.publishSeq.incrementAndGet();
+		try {
+			JedisConnector_Cache.getInstance().publish(CHANNEL, NODE_ID + "|" + seq + "|" + type + "|" + payload);
+		}catch (Exception e) {
+			logger.error("L2 Cache publish " + type + " failed: " + e.getMessage());
+		}
+	}
+
+	private void onInvalidation(String message){
+		String[] arr = message.split("\\|", 4);
+		if (arr.length < 4 || NODE_ID.equals(arr[0]))
+			return;
+		checkGap(arr[0], arr[1]);
+		String type = arr[2];
+		String payload = arr[3];
+		if (KEY.equals(type)) {
+			KeyListener keyListener = this.keyListener;
+			String[] kv = payload.split("\\|", 2);
+			if (keyListener != null && kv.length == 2)
+				keyListener.onKey(kv[0], kv[1]);
+			return;
+		}
+		NearCache<String> nearQueryCache = this.nearQueryCache;
+		if (QUERY.equals(type)) {
+			if (nearQueryCache == null)
+				return;
+			for (String key : payload.split(",")) {
+				nearQueryCache.invalidate(key);
+			}
+		} else if (REMOVE.equals(type)) {
+			for (String key : payload.split("\n")) {
+				invalidateNear(key);
+				onRemoved(key);
+			}
+		} else if (CLEAR.equals(type)) {
+			removeVersion(getGenerationKey(payload));
+			invalidateNearByPrefix(getEntityPrefix(payload));
+			onCleared(payload);
+		} else if (REFRESH.equals(type)) {
+			removeVersion(getNSKey(payload));
+			if (nearQueryCache != null)
+				nearQueryCache.invalidateByPrefix("{" + payload + "}.");
+			onCleared(payload);
+		} else if (MAPPED_REFRESH.equals(type)) {
+			removeVersion(payload + MAPPED);
+		}
+	}
+
+	/**
+	 * 同一节点的消息按序到达, 序号跳跃时, 丢弃本地的版本和副本, 并通知key的订阅者
+	 */
+	private void checkGap(String nodeId, String seqStr){
+		long seq;
+		try {
+			seq = Long.parseLong(seqStr);
+		}catch (NumberFormatException e) {
+			return;
+		}
+		if (this.publisherSeqMap.size() > MAX_PUBLISHER_SIZE)
+			this.publisherSeqMap.clear();
+		Long last = this.publisherSeqMap.put(nodeId, seq);
+		if (last == null || seq == last + 1)
+			return;
+		logger.warn("L2 Cache lost invalidation messages from " + nodeId + ", " + last + " -> " + seq);
+		this.versionSeq.incrementAndGet();
+		this.versionMap.clear();
+		NearCache<byte[]> nearCache = this.nearCache;
+		NearCache<String> nearQueryCache = this.nearQueryCache;
+		NearCache<byte[]> hotCache = this.hotCache;
+		if (nearCache != null)
+			nearCache.invalidateAll();
+		if (nearQueryCache != null)
+			nearQueryCache.invalidateAll();
+		if (hotCache != null)
+			hotCache.invalidateAll();
+		KeyListener keyListener = this.keyListener;
+		if (keyListener != null)
+			keyListener.onGap();
+		InvalidationListener invalidationListener = this.invalidationListener;
+		if (invalidationListener != null)
+			invalidationListener.onGap();
+	}
+
+	/**
+	 * @param simpleKey {类名}.代数.key 或 {类名#桶}.代数.key
+	 */
+	private void onRemoved(String simpleKey){
+		InvalidationListener invalidationListener = this.invalidationListener;
+		if (invalidationListener == null)
+			return;
+		int end = simpleKey.indexOf("}.");
+		int dot = simpleKey.indexOf('.', end + 2);
+		if (!simpleKey.startsWith("{") || end < 0 || dot < 0)
+			return;
+		String clzName = simpleKey.substring(1, end);
+		int bucket = clzName.indexOf('#');
+		if (bucket > 0)
+			clzName = clzName.substring(0, bucket);
+		invalidationListener.onRemove(clzName, simpleKey.substring(dot + 1));
+	}
+
+	private void onCleared(String clzName){
+		InvalidationListener invalidationListener = this.invalidationListener;
+		if (invalidationListener != null)
+			invalidationListener.onClear(clzName);
+	}
+
+	/**
+	 * 让近端缓存和热点副本失效
+	 * @return false: 都没有开启
+	 */
+	private boolean invalidateNear(String key){
+		NearCache<byte[]> nearCache = this.nearCache;
+		NearCache<byte[]> hotCache = this.hotCache;
+		if (nearCache != null)
+			nearCache.invalidate(key);
+		if (hotCache != null)
+			hotCache.invalidate(key);
+		return nearCache != null || hotCache != null;
+	}
+
+	private boolean invalidateNearByPrefix(String prefix){
+		NearCache<byte[]> nearCache = this.nearCache;
+		NearCache<byte[]> hotCache = this.hotCache;
+		if (nearCache != null)
+			nearCache.invalidateByPrefix(prefix);
+		if (hotCache != null)
+			hotCache.invalidateByPrefix(prefix);
+		return nearCache != null || hotCache != null;
+	}
+
+	/**
+	 * 记录一次读取
+	 * @return true: 热点key
+	 */
+	private boolean recordHot(String key){
+		if (!isHotKeyEnabled())
+			return false;
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		return hotKeyDetector != null && hotKeyDetector.record(key);
+	}
+
+	private byte[] getHot(String key){
+		NearCache<byte[]> hotCache = this.hotCache;
+		return hotCache == null ? null : hotCache.get(key);
+	}
+
+	private long hotEpoch(){
+		NearCache<byte[]> hotCache = this.hotCache;
+		return hotCache == null ? 0 : hotCache.epoch();
+	}
+
+	/**
+	 * 只保留热点key的副本
+	 */
+	private void putHot(String key, byte[] value, long epoch){
+		NearCache<byte[]> hotCache = this.hotCache;
+		HotKeyDetector hotKeyDetector = this.hotKeyDetector;
+		if (hotCache == null || hotKeyDetector == null || !hotKeyDetector.isHot(key) || value == null || value.length == 0 || Arrays.equals(value, NULL_VALUE))
+			return;
+		hotCache.put(key, value, epoch);
+	}
+
+	private byte[] getNear(String key){
+		if (!isNearCacheEnabled())
+			return null;
+		return this.nearCache.get(key);
+	}
+
+	private long nearEpoch(){
+		NearCache<byte[]> nearCache = this.nearCache;
+		return nearCache == null ? 0 : nearCache.epoch();
+	}
+
+	private void putNear(String key, byte[] value, long epoch){
+		NearCache<byte[]> nearCache = this.nearCache;
+		if (nearCache == null || value == null || value.length == 0 || Arrays.equals(value, NULL_VALUE))
+			return;
+		nearCache.put(key, value, epoch);
+	}
+
+	private byte[] encode(Object obj){
+		return obj == null ? NULL_VALUE : this.codec.encode(obj);
+	}
+
+	private <T> T decode(byte[] bytes, Class<T> clz){
+		if (bytes == null || bytes.length == 0 || Arrays.equals(bytes, NULL_VALUE))
+			return null;
+		return this.codec.decode(bytes, clz);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private String getQuery(Class clz, String key){
+		NearCache<String> nearQueryCache = isNearCacheEnabled() && isSubscribed() ? this.nearQueryCache : null;
+		if (nearQueryCache != null) {
+			String str = nearQueryCache.get(key);
+			if (str != null)
+				return str;
+		}
+		long epoch = nearQueryCache == null ? 0 : nearQueryCache.epoch();
+		long startNanos = System.nanoTime();
+		String str = JedisConnector_Cache.getInstance().get(key);
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_QUERY, startNanos, str == null ? 0 : str.length());
+		if (nearQueryCache != null && StringUtil.isNotNull(str)) {
+			nearQueryCache.put(key, str, epoch);
+		}
+		return str;
 	}
 	
 	/**
@@ -74,38 +577,248 @@ public class LevelTwoCacheResolver implements CacheResolver {
 		boolean flag = JedisConnector_Cache.getInstance().set(key, time);
 		if (!flag)
 			throw new CacheException("markForRefresh failed");
+		setVersion(key, time);
+		NearCache<String> nearQueryCache = this.nearQueryCache;
+		if (nearQueryCache != null) {
+			nearQueryCache.invalidateByPrefix("{" + clz.getName() + "}.");
+		}
+		publish(REFRESH, clz.getName());
+		this.metrics.invalidate(clz);
+		if (this.isDependencyTracking)
+			markForMapped(clz);
 		return time;
 	}
-	
+
 	/**
-	 * 
-	 * FIXME {hash tag}
+	 * 依赖追踪时, 写操作不改命名空间(ns), ResultMapped的结果按另一个版本失效
 	 */
+	@SuppressWarnings("rawtypes")
+	private void markForMapped(Class clz){
+		String key = clz.getName() + MAPPED;
+		String time = String.valueOf(System.nanoTime());
+		boolean flag = JedisConnector_Cache.getInstance().set(key, time);
+		if (!flag)
+			throw new CacheException("markForMapped failed");
+		setVersion(key, time);
+		publish(MAPPED_REFRESH, clz.getName());
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForCreate(Class clz, Object obj){
+		if (!this.isDependencyTracking) {
+			markForRefresh(clz);
+			return;
+		}
+		invalidate(clz, QueryDependency.onCreate(clz, Parser.get(clz), obj));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRefresh(Class clz, Collection<String> propertyList){
+		if (!this.isDependencyTracking) {
+			markForRefresh(clz);
+			return;
+		}
+		invalidate(clz, QueryDependency.onRefresh(clz, propertyList));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, String key){
+		if (!this.isDependencyTracking) {
+			markForRefresh(clz);
+			return;
+		}
+		invalidate(clz, QueryDependency.onRemove(clz, key));
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void markForRemove(Class clz, List<String> keyList){
+		if (!this.isDependencyTracking) {
+			markForRefresh(clz);
+			return;
+		}
+		invalidate(clz, QueryDependency.onRemove(clz, keyList));
+	}
+
+	/**
+	 * 立即失效, 并延迟再失效一次; 脚本失败时整个类失效
+	 */
+	@SuppressWarnings("rawtypes")
+	private void invalidate(final Class clz, final List<String> depList){
+		this.metrics.invalidate(clz);
+		markForMapped(clz);
+		if (!invalidateDependents(depList)) {
+			markForRefresh(clz);
+			return;
+		}
+		this.invalidateScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					markForMapped(clz);
+					if (!invalidateDependents(depList))
+						markForRefresh(clz);
+				} catch (Exception e) {
+					logger.error("L2 Cache invalidate again failed: " + e.getMessage());
+				}
+			}
+		}, INVALIDATE_AGAIN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private boolean invalidateDependents(List<String> depList){
+		List<byte[]> keyList;
+		try {
+			keyList = JedisConnector_Cache.getInstance().evalBytes(INVALIDATE_SCRIPT, depList);
+		}catch (Exception e) {
+			logger.error("L2 Cache invalidate dependents failed: " + e.getMessage());
+			return false;
+		}
+		if (keyList == null || keyList.isEmpty())
+			return true;
+
+		NearCache<String> nearQueryCache = this.nearQueryCache;
+		if (nearQueryCache != null) {
+			StringBuilder sb = new StringBuilder();
+			for (byte[] bytes : keyList) {
+				String key = new String(bytes, StandardCharsets.UTF_8);
+				nearQueryCache.invalidate(key);
+				if (sb.length() > 0)
+					sb.append(",");
+				sb.append(key);
+			}
+			publish(QUERY, sb.toString());
+		}
+		return true;
+	}
+
+	/**
+	 * 写结果并登记依赖; 登记失败时不缓存, 以免结果无法被失效
+	 */
+	@SuppressWarnings("rawtypes")
+	private void setTracked(Class clz, Object condition, String key, String value, List<String> keyList, boolean isPaged){
+		List<String> scriptKeyList = new ArrayList<>();
+		scriptKeyList.add(key);
+		scriptKeyList.addAll(QueryDependency.of(clz, condition, keyList, isPaged));
+		try {
+			long startNanos = System.nanoTime();
+			JedisConnector_Cache.getInstance().evalBytes(REGISTER_SCRIPT, scriptKeyList, value, String.valueOf(getValidSecondAdjusted(clz)));
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, value.length());
+		}catch (Exception e) {
+			logger.error("L2 Cache register dependents failed: " + e.getMessage());
+		}
+	}
+	
 	@SuppressWarnings("rawtypes")
 	public void remove(Class clz, String key){
 		key = getSimpleKey(clz, key);
 		boolean flag = JedisConnector_Cache.getInstance().delete(key);
 		if (!flag)
 			throw new CacheException("remove failed");
+		this.metrics.invalidate(clz);
+		if (invalidateNear(key) || this.invalidationListener != null)
+			publish(REMOVE, key);
 	}
 
+	/**
+	 * 一次pipeline删除, 一条失效消息
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void remove(Class clz, List<String> keyList) {
+		if (keyList.isEmpty())
+			return;
+		String generation = getGeneration(clz);
+		List<String> simpleKeyList = new ArrayList<>(keyList.size());
+		for (String key : keyList) {
+			simpleKeyList.add(getSimpleKey(clz.getName(), generation, key));
+		}
+		JedisConnector_Cache.getInstance().delete(simpleKeyList);
+		this.metrics.invalidate(clz);
+		boolean isNear = this.nearCache != null || this.hotCache != null || this.invalidationListener != null;
+		for (String key : simpleKeyList) {
+			invalidateNear(key);
+		}
+		if (isNear)
+			publish(REMOVE, String.join("\n", simpleKeyList));
+	}
+
+	/**
+	 * 不再KEYS扫描删除, 只递增实体代数(generation), O(1)<br>
+	 * 旧代数下的key不会再被读到, 到期后由redis自动清除
+	 */
 	public void remove(Class clz) {
 
-		String key = getSimpleKeyLike(clz);
+		String key = getGenerationKey(clz.getName());
+		long generation = JedisConnector_Cache.getInstance().incr(key);
+		if (generation <= 0)
+			throw new CacheException("remove failed");
+		this.metrics.invalidate(clz);
+		setVersion(key, String.valueOf(generation));
+
+		invalidateNearByPrefix(getEntityPrefix(clz.getName()));
+		publish(CLEAR, clz.getName());
+	}
 
-		Set<String> keySet = JedisConnector_Cache.getInstance().keys(key);
+	private String getGenerationKey(String clzName){
+		return clzName + GENERATION;
+	}
 
-		for (String k : keySet) {
-			boolean flag = JedisConnector_Cache.getInstance().delete(k);
-			if (!flag)
-				throw new CacheException("remove failed");
-		}
+	/**
+	 * 本地有版本时不访问redis
+	 */
+	private String getVersion(String versionKey, String defaultValue){
+		Version version = this.versionMap.get(versionKey);
+		if (version != null && isFresh(version, System.currentTimeMillis()))
+			return version.value;
+		long seq = this.versionSeq.get();
+		String value = JedisConnector_Cache.getInstance().get(versionKey);
+		if (value == null)
+			value = defaultValue;
+		if (value != null)
+			putVersion(versionKey, new Version(value), seq);
+		return value;
+	}
+
+	/**
+	 * 订阅后版本由失效消息更新, namespaceStaleMillis是消息丢失时的上限; 未订阅时不超过1秒
+	 */
+	private boolean isFresh(Version version, long now){
+		long staleMillis = this.namespaceStaleMillis;
+		if (!isSubscribed())
+			staleMillis = Math.min(staleMillis, UNSUBSCRIBED_STALE_MILLIS);
+		return now - version.loadedAt < staleMillis;
+	}
+
+	/**
+	 * 回填从redis读到的版本; 读取期间有失效消息或本地写, 放弃回填
+	 * @param seq 读取redis之前的versionSeq
+	 */
+	private void putVersion(String versionKey, Version version, long seq){
+		this.versionMap.put(versionKey, version);
+		if (this.versionSeq.get() != seq)
+			this.versionMap.remove(versionKey, version);
+	}
+
+	private void setVersion(String versionKey, String value){
+		this.versionSeq.incrementAndGet();
+		this.versionMap.put(versionKey, new Version(value));
+	}
 
+	private void removeVersion(String versionKey){
+		this.versionSeq.incrementAndGet();
+		this.versionMap.remove(versionKey);
 	}
 	
 	@SuppressWarnings("rawtypes")
 	private String getNSKey(Class clz){
-		return clz.getName()+ NANO_SECOND;
+		return getNSKey(clz.getName());
+	}
+
+	private String getNSKey(String clzName){
+		return clzName + NANO_SECOND;
 	}
 	
 	@SuppressWarnings("unused")
@@ -117,10 +830,10 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	private List<String> getKeyList(Class clz, List<String> conditionList){
 		if (conditionList == null || conditionList.isEmpty())
 			return null;
+		String generation = getGeneration(clz);
 		List<String> keyList = new ArrayList<>();
 		for (String condition : conditionList){
-			String key = getSimpleKey(clz, condition);
-			keyList.add(key);
+			keyList.add(getSimpleKey(clz.getName(), generation, condition));
 		}
 		if (keyList.isEmpty())
 			return null;
@@ -156,24 +869,38 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	 */
 	@SuppressWarnings("rawtypes")
 	private String getSimpleKey(Class clz, String condition){
-		return "{"+clz.getName()+"}." + condition;
+		return getSimpleKey(clz.getName(), getGeneration(clz), condition);
 	}
 
-	private String getSimpleKeyLike(Class clz){
-		return "{"+clz.getName()+"}.*" ;
+	@SuppressWarnings("rawtypes")
+	private String getGeneration(Class clz){
+		return getVersion(getGenerationKey(clz.getName()), "0");
+	}
+
+	/**
+	 * 分桶时, {hash tag}带上key的桶号, 同一个类的对象分散到多个slot
+	 */
+	private String getSimpleKey(String clzName, String generation, String condition){
+		if (this.keyBuckets <= 1)
+			return "{" + clzName + "}." + generation + "." + condition;
+		int bucket = (condition.hashCode() & Integer.MAX_VALUE) % this.keyBuckets;
+		return "{" + clzName + "#" + bucket + "}." + generation + "." + condition;
+	}
+
+	/**
+	 * 一个类所有对象key的前缀, 用于清除近端缓存
+	 */
+	private String getEntityPrefix(String clzName){
+		return this.keyBuckets <= 1 ? "{" + clzName + "}." : "{" + clzName + "#";
 	}
 	
 	
 	@SuppressWarnings("rawtypes")
 	private String getKey(Class clz, Object conditionObj){
+		if (conditionObj instanceof Criteria)
+			return getPrefix(clz) + "." + ((Criteria) conditionObj).fingerprint();
 		String condition = JsonX.toJson(conditionObj);
-		long startTime = System.currentTimeMillis();
-		String key =  getPrefix(clz) +"."+VerifyUtil.toMD5(condition);
-		long endTime = System.currentTimeMillis();
-		if (logger.isDebugEnabled()){
-			logger.debug("LevelTwoCacheResolver.getKey() cost time = " + (endTime - startTime) + "s");
-		}
-		return key;
+		return getPrefix(clz) + "." + VerifyUtil.toMD5(condition);
 	}
 
 	
@@ -185,7 +912,7 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	@SuppressWarnings("rawtypes")
 	private String getPrefix(Class clz){
 		String key = getNSKey(clz);
-		String nsStr = JedisConnector_Cache.getInstance().get(key);
+		String nsStr = getVersion(key, null);
 		if (nsStr == null){
 			String str = markForRefresh(clz);
 			return "{"+clz.getName()+"}." + str;
@@ -193,24 +920,67 @@ public class LevelTwoCacheResolver implements CacheResolver {
 		return "{"+clz.getName()+"}."  + nsStr;
 	}
 
-	/**
-	 * FIXME {hash tag}
-	 */
 	@SuppressWarnings("rawtypes")
 	@Override
 	public void set(Class clz, String key, Object obj) {
 		key = getSimpleKey(clz, key);
-		int validSecond =  getValidSecondAdjusted();
-		JedisConnector_Cache.getInstance().set(key, JsonX.toJson(obj), validSecond);
+		int validSecond =  obj == null ? this.nullValidSecond : getValidSecondAdjusted(clz);
+		byte[] bytes = encode(obj);
+		long epoch = nearEpoch();
+		long hotEpoch = hotEpoch();
+		long startNanos = System.nanoTime();
+		JedisConnector_Cache.getInstance().setBytes(key, bytes, validSecond);
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, bytes.length);
+		if (obj != null) {
+			putNear(key, bytes, epoch);
+			putHot(key, bytes, hotEpoch);
+		}
 	}
 
 
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void set(Class clz, Map<String, ? extends Object> objMap) {
+		if (objMap.isEmpty())
+			return;
+		int size = objMap.size();
+		List<String> keyList = new ArrayList<>(size);
+		List<byte[]> valueList = new ArrayList<>(size);
+		List<Integer> validSecondList = new ArrayList<>(size);
+		long bytes = 0;
+		String generation = getGeneration(clz);
+		for (Map.Entry<String, ? extends Object> entry : objMap.entrySet()) {
+			Object obj = entry.getValue();
+			byte[] value = encode(obj);
+			keyList.add(getSimpleKey(clz.getName(), generation, entry.getKey()));
+			valueList.add(value);
+			validSecondList.add(obj == null ? this.nullValidSecond : getValidSecondAdjusted(clz));
+			bytes += value.length;
+		}
+		long epoch = nearEpoch();
+		long hotEpoch = hotEpoch();
+		long startNanos = System.nanoTime();
+		JedisConnector_Cache.getInstance().setBytes(keyList, valueList, validSecondList);
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, bytes);
+		for (int i = 0; i < size; i++) {
+			putNear(keyList.get(i), valueList.get(i), epoch);
+			putHot(keyList.get(i), valueList.get(i), hotEpoch);
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	@Override
 	public void setResultKeyList(Class clz, Object condition, List<String> keyList) {
 		String key = getKey(clz, condition);
+		if (this.isDependencyTracking) {
+			setTracked(clz, condition, key, JsonX.toJson(keyList), keyList, false);
+			return;
+		}
 		try{
-			JedisConnector_Cache.getInstance().set(key, JsonX.toJson(keyList), validSecond);
+			String value = JsonX.toJson(keyList);
+			long startNanos = System.nanoTime();
+			JedisConnector_Cache.getInstance().set(key, value, getValidSecondAdjusted(clz));
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, value.length());
 		}catch (Exception e) {
 			throw new PersistenceException(e.getMessage());
 		}
@@ -221,8 +991,15 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	public <T> void setResultKeyListPaginated(Class<T> clz, Object condition, Page<T> pagination) {
 		
 		String key = getKey(clz, condition);
+		if (this.isDependencyTracking) {
+			setTracked(clz, condition, key, JsonX.toJson(pagination), pagination.getKeyList(), true);
+			return;
+		}
 		try{
-			JedisConnector_Cache.getInstance().set(key, JsonX.toJson(pagination), validSecond);
+			String value = JsonX.toJson(pagination);
+			long startNanos = System.nanoTime();
+			JedisConnector_Cache.getInstance().set(key, value, getValidSecondAdjusted(clz));
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, value.length());
 		}catch (Exception e) {
 			throw new PersistenceException(e.getMessage());
 		}
@@ -232,7 +1009,7 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	@Override
 	public List<String> getResultKeyList(Class clz, Object condition) {
 		String key = getKey(clz, condition);
-		String str = JedisConnector_Cache.getInstance().get(key);
+		String str = getQuery(clz, key);
 		if (StringUtil.isNullOrEmpty(str))
 			return new ArrayList<String>();
 		
@@ -243,7 +1020,7 @@ public class LevelTwoCacheResolver implements CacheResolver {
 	@Override
 	public Page<String> getResultKeyListPaginated(Class clz, Object condition) {
 		String key = getKey(clz, condition);
-		String json = JedisConnector_Cache.getInstance().get(key);
+		String json = getQuery(clz, key);
 		
 		if (StringUtil.isNullOrEmpty(json))
 			return null;
@@ -251,43 +1028,401 @@ public class LevelTwoCacheResolver implements CacheResolver {
 		return ObjectUtil.toPagination(json);
 	}
 
+	/**
+	 * 开启近端缓存时, 仍分步查询, 以利用近端缓存<br>
+	 * 分桶后对象与结果Key不在同一个slot, 不能用脚本
+	 */
+	private boolean isScriptAvailable(){
+		return this.keyBuckets <= 1 && System.currentTimeMillis() >= this.scriptDisabledUntil && !isNearCacheEnabled();
+	}
+
+	/**
+	 * 一次EVALSHA查出结果Key列表和对象
+	 * @return null: 脚本执行失败
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<byte[]> evalResultKey(Class clz, Object condition, boolean isPaged){
+		String key = getKey(clz, condition);
+		String prefix = getSimpleKey(clz, "");
+		try {
+			long startNanos = System.nanoTime();
+			List<byte[]> valueList = JedisConnector_Cache.getInstance().evalBytes(RESULT_KEY_SCRIPT, Arrays.asList(key), isPaged ? "1" : "0", prefix);
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_EVAL, startNanos, sizeOf(valueList));
+			return valueList == null ? new ArrayList<byte[]>() : valueList;
+		}catch (Exception e) {
+			this.scriptDisabledUntil = System.currentTimeMillis() + SCRIPT_RETRY_MILLIS;
+			logger.error("L2 Cache lua script failed, fall back to GET + MGET: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private <T> List<T> toObjectList(Class<T> clz, List<byte[]> valueList, int from){
+		List<T> list = new ArrayList<T>();
+		for (int i = from, size = valueList.size(); i < size; i++){
+			T t = decode(valueList.get(i), clz);
+			if (t != null) {
+				list.add(t);
+			}
+		}
+		return list;
+	}
+
+	private String getResultValue(List<byte[]> valueList){
+		if (valueList.isEmpty() || valueList.get(0) == null)
+			return null;
+		return new String(valueList.get(0), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public <T> List<T> listByResultKey(Class<T> clz, Object conditionObj, List<String> keyList) {
+		if (!isScriptAvailable())
+			return CacheResolver.super.listByResultKey(clz, conditionObj, keyList);
+
+		List<byte[]> valueList = evalResultKey(clz, conditionObj, false);
+		if (valueList == null)
+			return CacheResolver.super.listByResultKey(clz, conditionObj, keyList);
+		String json = getResultValue(valueList);
+		if (StringUtil.isNullOrEmpty(json))
+			return null;
+
+		List<String> resultKeyList = JsonX.toList(json, String.class);
+		if (resultKeyList == null || resultKeyList.isEmpty())
+			return null;
+		keyList.addAll(resultKeyList);
+
+		return toObjectList(clz, valueList, 1);
+	}
+
+	@Override
+	public <T> Page<T> findByResultKey(Class<T> clz, Object conditionObj) {
+		if (!isScriptAvailable())
+			return CacheResolver.super.findByResultKey(clz, conditionObj);
+
+		List<byte[]> valueList = evalResultKey(clz, conditionObj, true);
+		if (valueList == null)
+			return CacheResolver.super.findByResultKey(clz, conditionObj);
+		String json = getResultValue(valueList);
+		if (StringUtil.isNullOrEmpty(json))
+			return null;
+
+		Page<T> p = ObjectUtil.toPagination(json);
+		if (p == null)
+			return null;
+		List<String> keyList = p.getKeyList();
+		if (keyList == null || keyList.isEmpty()) {
+			p.reSetList(new ArrayList<T>());
+			return p;
+		}
+		p.reSetList(toObjectList(clz, valueList, 1));
+		return p;
+	}
+
 	@Override
 	public <T> List<T> list(Class<T> clz, List<String> keyList) {
 		List<String> keyArr = getKeyList(clz, keyList);//转换成缓存需要的keyList
 		
-		List<String> jsonList = JedisConnector_Cache.getInstance().mget(keyArr);
+		List<byte[]> valueList = mget(clz, keyArr);
 		
-		if (jsonList == null)
+		if (valueList == null)
 			return new ArrayList<T>();
 		
-		List<T> list = new ArrayList<T>();
-		for (String json : jsonList){
-			if (StringUtil.isNotNull(json)) {
-				T t = JsonX.toObject(json,clz);
-				list.add(t);
+		return toObjectList(clz, valueList, 0);
+	}
+
+	/**
+	 * 先查热点副本和近端缓存, 只向redis查询本地缺失的key
+	 */
+	@SuppressWarnings("rawtypes")
+	private List<byte[]> mget(Class clz, List<String> keyArr){
+		if (keyArr == null)
+			return null;
+		boolean isHotKeyEnabled = isHotKeyEnabled();
+		NearCache<byte[]> nearCache = isNearCacheEnabled() ? this.nearCache : null;
+		if (nearCache == null && !isHotKeyEnabled)
+			return mgetBytes(clz, keyArr);
+
+		int size = keyArr.size();
+		List<byte[]> valueList = new ArrayList<>(size);
+		List<String> missedKeyList = new ArrayList<>();
+		List<Integer> missedIndexList = new ArrayList<>();
+		int hotHit = 0;
+		for (int i = 0; i < size; i++) {
+			String key = keyArr.get(i);
+			byte[] value = null;
+			if (isHotKeyEnabled && recordHot(key)) {
+				value = getHot(key);
+				if (value != null)
+					hotHit++;
+			}
+			if (value == null && nearCache != null)
+				value = nearCache.get(key);
+			valueList.add(value);
+			if (value == null) {
+				missedKeyList.add(key);
+				missedIndexList.add(i);
 			}
 		}
-		
-		return list;
+		if (hotHit > 0)
+			this.metrics.hit(clz, L2CacheMetrics.HOT_KEY, hotHit);
+
+		if (missedKeyList.isEmpty())
+			return valueList;
+
+		long epoch = nearEpoch();
+		long hotEpoch = hotEpoch();
+		List<byte[]> missedValueList = mgetBytes(clz, missedKeyList);
+		if (missedValueList == null)
+			return valueList;
+		for (int i = 0, length = missedValueList.size(); i < length; i++) {
+			byte[] value = missedValueList.get(i);
+			valueList.set(missedIndexList.get(i), value);
+			putNear(missedKeyList.get(i), value, epoch);
+			putHot(missedKeyList.get(i), value, hotEpoch);
+		}
+		return valueList;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private List<byte[]> mgetBytes(Class clz, List<String> keyArr){
+		if (keyArr == null)
+			return null;
+		long startNanos = System.nanoTime();
+		List<byte[]> valueList = JedisConnector_Cache.getInstance().mgetBytes(keyArr);
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_MGET, startNanos, sizeOf(valueList));
+		return valueList;
+	}
+
+	private long sizeOf(List<byte[]> valueList){
+		long size = 0;
+		if (valueList != null) {
+			for (byte[] value : valueList) {
+				if (value != null)
+					size += value.length;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public <T> T get(Class<T> clz, String key) {
+		return decode(getBytes(clz, key), clz);
+	}
+
+	@Override
+	public <T> Optional<T> getNullable(Class<T> clz, String key) {
+		return toNullable(getBytes(clz, key), clz);
+	}
+
+	private <T> Optional<T> toNullable(byte[] bytes, Class<T> clz) {
+		if (bytes == null)
+			return null;
+		if (Arrays.equals(bytes, NULL_VALUE))
+			return Optional.empty();
+		T t = decode(bytes, clz);
+		return t == null ? null : Optional.of(t);
 	}
 
 	/**
-	 * FIXME {hash tag}
+	 * 近端缓存命中时不检查过期时间, refreshAheadSeconds应大于近端缓存的时间
 	 */
 	@Override
-	public <T> T get(Class<T> clz, String key) {
+	public <T> Optional<T> getNullable(Class<T> clz, String key, int refreshAheadSeconds, final Runnable reloader) {
+		if (refreshAheadSeconds <= 0)
+			return getNullable(clz, key);
+
+		final String cacheKey = getSimpleKey(clz, key);
+		byte[] bytes = getNear(cacheKey);
+		if (bytes == null) {
+			long epoch = nearEpoch();
+			long startNanos = System.nanoTime();
+			List<Object> list = JedisConnector_Cache.getInstance().getBytesWithTtl(cacheKey);
+			bytes = (byte[]) list.get(0);
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_GET, startNanos, bytes == null ? 0 : bytes.length);
+			Long pttl = (Long) list.get(1);
+			putNear(cacheKey, bytes, epoch);
+			if (bytes != null && pttl != null && pttl >= 0 && pttl < refreshAheadSeconds * 1000L
+					&& this.refreshingKeySet.add(cacheKey)) {
+				CasualWorker.accept(new IAsyncTask() {
+					@Override
+					public void execute() throws Exception {
+						try {
+							reloader.run();
+						} finally {
+							refreshingKeySet.remove(cacheKey);
+						}
+					}
+				});
+			}
+		}
+
+		return toNullable(bytes, clz);
+	}
+
+	private byte[] getBytes(Class clz, String key) {
 		key = getSimpleKey(clz,key);
-		String str = JedisConnector_Cache.getInstance().get(key);
-		if (StringUtil.isNullOrEmpty(str))
+		boolean isHot = recordHot(key);
+		if (isHot) {
+			byte[] bytes = getHot(key);
+			if (bytes != null) {
+				this.metrics.hit(clz, L2CacheMetrics.HOT_KEY);
+				return bytes;
+			}
+		}
+		long hotEpoch = hotEpoch();
+		byte[] bytes = getNear(key);
+		if (bytes == null) {
+			long epoch = nearEpoch();
+			long startNanos = System.nanoTime();
+			bytes = JedisConnector_Cache.getInstance().getBytes(key);
+			this.metrics.redis(clz, L2CacheMetrics.REDIS_GET, startNanos, bytes == null ? 0 : bytes.length);
+			putNear(key, bytes, epoch);
+		}
+		if (isHot)
+			putHot(key, bytes, hotEpoch);
+		return bytes;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void publishKey(Class clz, String key) {
+		if (this.keyListener == null && !isNearCacheEnabled() && !isHotKeyEnabled())
+			return;
+		publish(KEY, clz.getName() + "|" + key);
+	}
+
+	@Override
+	public boolean subscribeKey(KeyListener listener) {
+		if (!this.isSubscribed)
+			subscribe();
+		if (!this.isSubscribed)
+			return false;
+		this.keyListener = listener;
+		return true;
+	}
+
+	/**
+	 * 订阅失败时仍保留监听, 重新订阅成功后生效
+	 */
+	@Override
+	public boolean subscribeInvalidation(InvalidationListener listener) {
+		this.invalidationListener = listener;
+		return isSubscribed();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean tryLease(Class clz, Object conditionObj, long millis) {
+		String key = getKey(clz, conditionObj) + LEASE;
+		try {
+			return JedisConnector_Cache.getInstance().setIfAbsent(key, NODE_ID, millis);
+		}catch (Exception e) {
+			logger.error("L2 Cache lease failed: " + e.getMessage());
+			return true;
+		}
+	}
+
+	/**
+	 * 只释放本节点持有的租约; 超时的租约由redis过期清除
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void releaseLease(Class clz, Object conditionObj) {
+		String key = getKey(clz, conditionObj) + LEASE;
+		try {
+			if (NODE_ID.equals(JedisConnector_Cache.getInstance().get(key)))
+				JedisConnector_Cache.getInstance().delete(key);
+		}catch (Exception e) {
+			logger.error("L2 Cache release lease failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 与对象在同一个{hash tag}和代数下, 也走近端缓存
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setUniqueKey(Class clz, String uniqueKey, String key) {
+		String simpleKey = getSimpleKey(clz, UNIQUE + uniqueKey);
+		byte[] value = key.getBytes(StandardCharsets.UTF_8);
+		long startNanos = System.nanoTime();
+		JedisConnector_Cache.getInstance().setBytes(simpleKey, value, getValidSecondAdjusted(clz));
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, value.length);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public String getUniqueKey(Class clz, String uniqueKey) {
+		byte[] bytes = getBytes(clz, UNIQUE + uniqueKey);
+		if (bytes == null || bytes.length == 0)
 			return null;
-		T obj = JsonX.toObject(str,clz);
-		return obj;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * {主类}.rm.{各类的版本}.{条件}, 本地过期的版本一次MGET取回
+	 */
+	@SuppressWarnings("rawtypes")
+	private String getResultMappedKey(List<Class> clzList, String condition){
+		int size = clzList.size();
+		String[] versions = new String[size];
+		List<String> staleKeyList = new ArrayList<>();
+		List<Integer> staleIndexList = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		long seq = this.versionSeq.get();
+		for (int i = 0; i < size; i++) {
+			String clzName = clzList.get(i).getName();
+			String key = this.isDependencyTracking ? clzName + MAPPED : getNSKey(clzName);
+			Version version = this.versionMap.get(key);
+			if (version != null && isFresh(version, now)) {
+				versions[i] = version.value;
+			} else {
+				staleKeyList.add(key);
+				staleIndexList.add(i);
+			}
+		}
+		if (!staleKeyList.isEmpty()) {
+			List<String> valueList = JedisConnector_Cache.getInstance().mget(staleKeyList);
+			for (int j = 0, length = staleKeyList.size(); j < length; j++) {
+				String value = valueList == null ? null : valueList.get(j);
+				if (value == null)
+					value = "0";
+				putVersion(staleKeyList.get(j), new Version(value), seq);
+				versions[staleIndexList.get(j)] = value;
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("{").append(clzList.get(0).getName()).append("}").append(RESULT_MAPPED);
+		for (String version : versions) {
+			sb.append(version).append(".");
+		}
+		return sb.append(condition).toString();
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void setResultMapped(List<Class> clzList, String condition, byte[] value) {
+		Class clz = clzList.get(0);
+		String key = getResultMappedKey(clzList, condition);
+		long startNanos = System.nanoTime();
+		JedisConnector_Cache.getInstance().setBytes(key, value, getValidSecondAdjusted(clz));
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_SET, startNanos, value.length);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public byte[] getResultMapped(List<Class> clzList, String condition) {
+		Class clz = clzList.get(0);
+		String key = getResultMappedKey(clzList, condition);
+		long startNanos = System.nanoTime();
+		byte[] bytes = JedisConnector_Cache.getInstance().getBytes(key);
+		this.metrics.redis(clz, L2CacheMetrics.REDIS_GET, startNanos, bytes == null ? 0 : bytes.length);
+		return bytes;
 	}
 
 	@Override
 	public void setMapList(Class clz, String key, List<Map<String, Object>> mapList) {
 		key = getSimpleKey(clz, key);
-		int validSecond =  getValidSecondAdjusted();
+		int validSecond =  getValidSecondAdjusted(clz);
 		
 		JedisConnector_Cache.getInstance().set(key, JsonX.toJson(mapList), validSecond);
 	}
@@ -303,4 +1438,14 @@ public class LevelTwoCacheResolver implements CacheResolver {
 		return mapList;
 	}
 
+	private static class Version {
+		private final String value;
+		private final long loadedAt;
+
+		private Version(String value) {
+			this.value = value;
+			this.loadedAt = System.currentTimeMillis();
+		}
+	}
+
 }
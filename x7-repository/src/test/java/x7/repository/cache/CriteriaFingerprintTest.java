@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Test;
+import x7.core.bean.Criteria;
+import x7.core.bean.CriteriaBuilder;
+import x7.core.util.Murmur3Hasher;
+import x7.core.web.Direction;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CriteriaFingerprintTest {
+
+	@Test
+	public void hasherIsDeterministic() {
+		String a = new Murmur3Hasher().putString("abc").putObject(Arrays.asList(1, "2")).toHex();
+		String b = new Murmur3Hasher().putString("abc").putObject(Arrays.asList(1, "2")).toHex();
+		assertEquals(a, b);
+		assertEquals(32, a.length());
+		assertNotEquals(a, new Murmur3Hasher().putString("abd").putObject(Arrays.asList(1, "2")).toHex());
+	}
+
+	@Test
+	public void hasherTagsType() {
+		assertNotEquals(new Murmur3Hasher().putObject(1).toHex(), new Murmur3Hasher().putObject("1").toHex());
+		assertEquals(new Murmur3Hasher().putObject(1).toHex(), new Murmur3Hasher().putObject(1L).toHex());
+		assertNotEquals(new Murmur3Hasher().putObject(null).toHex(), new Murmur3Hasher().putObject("").toHex());
+	}
+
+	@Test
+	public void equalCriteriaHaveEqualFingerprint() {
+		assertEquals(criteria("foo", 1).fingerprint(), criteria("foo", 1).fingerprint());
+		assertNotEquals(criteria("foo", 1).fingerprint(), criteria("foo", "1").fingerprint());
+		assertNotEquals(criteria("foo", 1).fingerprint(), criteria("bar", 1).fingerprint());
+	}
+
+	@Test
+	public void builderMutationResetsFingerprint() {
+		CriteriaBuilder builder = CriteriaBuilder.buildCondition();
+		builder.and().eq("name", "foo");
+		Criteria criteria = builder.get();
+		String before = criteria.fingerprint();
+
+		builder.paged().sort("id", Direction.DESC);
+		String sorted = criteria.fingerprint();
+		assertNotEquals(before, sorted);
+
+		builder.paged().orderIn("id", Arrays.asList(3, 1, 2));
+		String ordered = criteria.fingerprint();
+		assertNotEquals(sorted, ordered);
+
+		builder.and().eq("age", 3);
+		assertNotEquals(ordered, builder.get().fingerprint());
+	}
+
+	@Test
+	public void countDistinctResetsFingerprint() {
+		Criteria criteria = criteria("foo", 1);
+		String before = criteria.fingerprint();
+		criteria.setCountDistinct("name");
+		assertNotEquals(before, criteria.fingerprint());
+	}
+
+	private static Criteria criteria(String name, Object value) {
+		CriteriaBuilder builder = CriteriaBuilder.buildCondition();
+		builder.and().eq("name", name).and().eq("age", value);
+		return builder.get();
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HotKeyDetectorTest {
+
+    @Test
+    public void promotedAtThreshold() {
+        HotKeyDetector detector = new HotKeyDetector(3, 60000, 10);
+        assertFalse(detector.record("a"));
+        assertFalse(detector.record("a"));
+        assertTrue(detector.record("a"));
+        assertTrue(detector.isHot("a"));
+        assertFalse(detector.isHot("b"));
+        assertEquals(1, detector.getPromotionCount());
+    }
+
+    @Test
+    public void hotKeysAreBounded() {
+        HotKeyDetector detector = new HotKeyDetector(1, 60000, 1);
+        assertTrue(detector.record("a"));
+        assertFalse(detector.record("b"));
+        assertEquals(1, detector.getHotKeyCount());
+        assertEquals("a", detector.getHotKeyList().get(0));
+    }
+
+    @Test
+    public void demotedWhenCold() throws InterruptedException {
+        HotKeyDetector detector = new HotKeyDetector(3, 1, 10);
+        for (int i = 0; i < 3; i++) {
+            detector.record("a");
+        }
+        assertTrue(detector.isHot("a"));
+
+        /*
+         * 第一个窗口结束时计数减半, 第二个窗口结束时不到阈值, 降级
+         */
+        Thread.sleep(5);
+        detector.record("b");
+        Thread.sleep(5);
+        detector.record("b");
+        assertFalse(detector.isHot("a"));
+        assertEquals(1, detector.getDemotionCount());
+    }
+}
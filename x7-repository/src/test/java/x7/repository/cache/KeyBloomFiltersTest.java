@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Test;
+import x7.core.bean.Parsed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyBloomFiltersTest {
+
+	@Test
+	public void bloomFilterHasNoFalseNegative() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put(String.valueOf(i));
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain(String.valueOf(i)));
+		}
+	}
+
+	@Test
+	public void bloomFilterFalsePositiveRate() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put(String.valueOf(i));
+		}
+		int falsePositives = 0;
+		for (int i = 10000; i < 110000; i++) {
+			if (filter.mightContain(String.valueOf(i)))
+				falsePositives++;
+		}
+		assertTrue("false positives: " + falsePositives, falsePositives < 2000);
+	}
+
+	@Test
+	public void passesUntilBuiltThenFilters() throws InterruptedException {
+		final CountDownLatch scanned = new CountDownLatch(1);
+		KeyBloomFilters filters = new KeyBloomFilters(new KeyBloomFilters.KeyScanner() {
+			@Override
+			public List<String> scan(Class clz, String lastKey, int rows) {
+				List<String> keyList = new ArrayList<>();
+				if (lastKey == null) {
+					keyList.add("1");
+					keyList.add("2");
+				}
+				scanned.countDown();
+				return keyList;
+			}
+		});
+		Parsed parsed = parsed();
+
+		assertTrue(filters.mightContain(Cat.class, parsed, "3"));
+		assertTrue(scanned.await(5, TimeUnit.SECONDS));
+		waitBuilt(filters, parsed, "3");
+
+		assertTrue(filters.mightContain(Cat.class, parsed, "1"));
+		assertFalse(filters.mightContain(Cat.class, parsed, "3"));
+
+		filters.put(Cat.class, "3");
+		assertTrue(filters.mightContain(Cat.class, parsed, "3"));
+	}
+
+	@Test
+	public void resetDropsFilterAndRebuilds() throws InterruptedException {
+		final AtomicInteger scanCount = new AtomicInteger();
+		KeyBloomFilters filters = new KeyBloomFilters(new KeyBloomFilters.KeyScanner() {
+			@Override
+			public List<String> scan(Class clz, String lastKey, int rows) {
+				List<String> keyList = new ArrayList<>();
+				if (scanCount.incrementAndGet() > 1)
+					keyList.add("4");
+				return keyList;
+			}
+		});
+		Parsed parsed = parsed();
+
+		filters.mightContain(Cat.class, parsed, "4");
+		waitBuilt(filters, parsed, "4");
+		assertEquals(1, scanCount.get());
+
+		filters.reset();
+		assertTrue(filters.mightContain(Cat.class, parsed, "4"));
+		for (int i = 0; i < 500 && scanCount.get() < 2; i++) {
+			Thread.sleep(10);
+			filters.mightContain(Cat.class, parsed, "4");
+		}
+		assertEquals(2, scanCount.get());
+	}
+
+	/**
+	 * 构建完成后, 不存在的key不再通过
+	 */
+	private static void waitBuilt(KeyBloomFilters filters, Parsed parsed, String absentKey) throws InterruptedException {
+		for (int i = 0; i < 500 && filters.mightContain(Cat.class, parsed, absentKey); i++) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static Parsed parsed() {
+		Parsed parsed = new Parsed(Cat.class);
+		parsed.setBloomExpectedSize(1000);
+		parsed.setBloomFpp(0.01);
+		parsed.setBloomRebuildMinutes(60);
+		return parsed;
+	}
+
+	public static class Cat {
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedCacheStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reloadAfterReopen() throws IOException {
+		File file = new File(folder.getRoot(), "cat.cache");
+		MappedCacheStore store = new MappedCacheStore(file, 1, 7);
+		store.put("a", bytes("1"), 60);
+		store.put("b", bytes("2"), 60);
+		store.put("a", bytes("3"), 60);
+		store.remove("b");
+		store.close();
+
+		store = new MappedCacheStore(file, 1, 7);
+		assertEquals(1, store.size());
+		assertEquals("3", string(store.get("a")));
+		assertNull(store.get("b"));
+		store.close();
+	}
+
+	@Test
+	public void expiredIsNotReturnedNorReloaded() throws IOException {
+		File file = new File(folder.getRoot(), "cat.cache");
+		MappedCacheStore store = new MappedCacheStore(file, 1, 7);
+		store.put("a", bytes("1"), 0);
+		assertNull(store.get("a"));
+		store.close();
+
+		store = new MappedCacheStore(file, 1, 7);
+		assertEquals(0, store.size());
+		store.close();
+	}
+
+	@Test
+	public void fingerprintMismatchClears() throws IOException {
+		File file = new File(folder.getRoot(), "cat.cache");
+		MappedCacheStore store = new MappedCacheStore(file, 1, 7);
+		store.put("a", bytes("1"), 60);
+		store.close();
+
+		store = new MappedCacheStore(file, 1, 8);
+		assertEquals(0, store.size());
+		assertNull(store.get("a"));
+		store.close();
+	}
+
+	@Test
+	public void fullFileIsCleared() throws IOException {
+		MappedCacheStore store = new MappedCacheStore(new File(folder.getRoot(), "cat.cache"), 1, 7);
+		byte[] value = new byte[100 * 1024];
+		for (int i = 0; i < 20; i++) {
+			store.put("k" + i, value, 60);
+		}
+		assertEquals(10, store.size());
+		assertEquals(value.length, store.get("k19").length);
+		assertNull(store.get("k9"));
+
+		store.clear();
+		assertEquals(0, store.size());
+		store.close();
+	}
+
+	@Test
+	public void lockedByOtherStore() throws IOException {
+		File file = new File(folder.getRoot(), "cat.cache");
+		MappedCacheStore store = new MappedCacheStore(file, 1, 7);
+		try {
+			new MappedCacheStore(file, 1, 7);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("locked"));
+		} finally {
+			store.close();
+		}
+		new MappedCacheStore(file, 1, 7).close();
+	}
+
+	private static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearCacheTest {
+
+    private final static NearCache.Weigher<String> WEIGHER = new NearCache.Weigher<String>() {
+        @Override
+        public int weigh(String value) {
+            return value.length();
+        }
+    };
+
+    /**
+     * 与NearCache.segmentFor相同的算法
+     */
+    private static int segmentOf(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return h & 15;
+    }
+
+    private static String keyInOtherSegment(String key) {
+        for (int i = 0; ; i++) {
+            String other = "k" + i;
+            if (segmentOf(other) != segmentOf(key))
+                return other;
+        }
+    }
+
+    @Test
+    public void putAndGet() {
+        NearCache<String> cache = new NearCache<>(1000, 100000, 60, WEIGHER);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void refillReadBeforeInvalidationIsDropped() {
+        NearCache<String> cache = new NearCache<>(1000, 100000, 60, WEIGHER);
+        long epoch = cache.epoch();
+        cache.invalidate("a");
+        cache.put("a", "old", epoch);
+        assertNull(cache.get("a"));
+
+        cache.put("a", "new", cache.epoch());
+        assertEquals("new", cache.get("a"));
+    }
+
+    @Test
+    public void invalidationOfOtherSegmentKeepsRefill() {
+        NearCache<String> cache = new NearCache<>(1000, 100000, 60, WEIGHER);
+        String other = keyInOtherSegment("a");
+        long epoch = cache.epoch();
+        cache.invalidate(other);
+        cache.put("a", "1", epoch);
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void invalidateByPrefixAndAll() {
+        NearCache<String> cache = new NearCache<>(1000, 100000, 60, WEIGHER);
+        cache.put("{A}.1", "1");
+        cache.put("{B}.1", "1");
+        long epoch = cache.epoch();
+        cache.invalidateByPrefix("{A}.");
+        assertNull(cache.get("{A}.1"));
+        assertEquals("1", cache.get("{B}.1"));
+
+        cache.put("{B}.2", "2", epoch);
+        assertNull(cache.get("{B}.2"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void expired() {
+        NearCache<String> cache = new NearCache<>(1000, 100000, 60, WEIGHER);
+        cache.put("a", "1", cache.epoch(), 0);
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        NearCache<String> cache = new NearCache<>(160, 1000000, 60, WEIGHER);
+        for (int i = 0; i < 10000; i++) {
+            cache.put("k" + i, "v");
+        }
+        assertTrue(cache.size() <= 160);
+    }
+
+    @Test
+    public void weightIsBounded() {
+        NearCache<String> cache = new NearCache<>(100000, 16 * 10, 60, WEIGHER);
+        cache.put("big", "01234567890");
+        assertNull(cache.get("big"));
+        for (int i = 0; i < 1000; i++) {
+            cache.put("k" + i, "01234");
+        }
+        assertTrue(cache.size() <= 16 * 2);
+    }
+
+    @Test
+    public void frequentKeySurvivesEviction() {
+        NearCache<String> cache = new NearCache<>(160, 1000000, 60, WEIGHER);
+        cache.put("hot", "1");
+        for (int i = 0; i < 20; i++) {
+            cache.get("hot");
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.put("k" + i, "v");
+        }
+        assertEquals("1", cache.get("hot"));
+    }
+}
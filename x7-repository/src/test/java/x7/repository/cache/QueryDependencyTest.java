@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.cache;
+
+import org.junit.Test;
+import x7.core.bean.Criteria;
+import x7.core.bean.CriteriaBuilder;
+import x7.core.bean.Parsed;
+import x7.core.bean.Parser;
+import x7.core.repository.X;
+import x7.core.web.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueryDependencyTest {
+
+	private final static String PREFIX = "{" + Cat.class.getName() + "}.dep.";
+
+	@Test
+	public void eqCondition() {
+		CriteriaBuilder builder = CriteriaBuilder.build(Cat.class);
+		builder.and().eq("name", "foo").and().gt("age", 1);
+		builder.paged().sort("age", Direction.DESC);
+		List<String> depList = QueryDependency.of(Cat.class, builder.get(), Arrays.asList("7"), true);
+
+		assertTrue(depList.contains(PREFIX + "col.name"));
+		assertTrue(depList.contains(PREFIX + "col.age"));
+		assertTrue(depList.contains(PREFIX + "eq.name.foo"));
+		assertTrue(depList.contains(PREFIX + "eqcol.name"));
+		assertTrue(depList.contains(PREFIX + "window"));
+		assertTrue(depList.contains(PREFIX + "id.7"));
+		assertFalse(depList.contains(PREFIX + "any"));
+	}
+
+	@Test
+	public void orConditionDependsOnAny() {
+		CriteriaBuilder builder = CriteriaBuilder.build(Cat.class);
+		builder.and().eq("name", "foo").or().eq("name", "bar");
+		List<String> depList = QueryDependency.of(Cat.class, builder.get(), null, false);
+
+		assertTrue(depList.contains(PREFIX + "any"));
+		assertFalse(depList.contains(PREFIX + "window"));
+	}
+
+	@Test
+	public void unknownConditionDependsOnAll() {
+		CriteriaBuilder builder = CriteriaBuilder.build(Cat.class);
+		builder.and().x("name = 'foo'");
+		assertEquals(Arrays.asList(PREFIX + "all"), QueryDependency.of(Cat.class, builder.get(), null, false));
+		assertEquals(Arrays.asList(PREFIX + "all"), QueryDependency.of(Cat.class, new Cat(), null, false));
+	}
+
+	/**
+	 * 新增对象的值按数据库的比较规则归一后, 与查询条件的依赖相同
+	 */
+	@Test
+	public void createMatchesNormalizedEq() {
+		Parsed parsed = Parser.get(Cat.class);
+		Cat cat = new Cat();
+		cat.setName("Foo ");
+		cat.setFlag(true);
+		List<String> createList = QueryDependency.onCreate(Cat.class, parsed, cat);
+
+		assertTrue(createList.contains(PREFIX + "all"));
+		assertTrue(createList.contains(PREFIX + "any"));
+		assertTrue(createList.contains(firstEq(criteria("name", "foo"))));
+		assertTrue(createList.contains(firstEq(criteria("flag", 1))));
+		assertTrue(createList.contains(PREFIX + "eqcol.age"));
+	}
+
+	@Test
+	public void removeInvalidatesAllWindowAndIds() {
+		List<String> depList = QueryDependency.onRemove(Cat.class, Arrays.asList("1", "2"));
+		assertEquals(Arrays.asList(PREFIX + "all", PREFIX + "window", PREFIX + "id.1", PREFIX + "id.2"), depList);
+		assertEquals(QueryDependency.onRemove(Cat.class, Arrays.asList("1")), QueryDependency.onRemove(Cat.class, "1"));
+	}
+
+	private static Criteria criteria(String property, Object value) {
+		CriteriaBuilder builder = CriteriaBuilder.build(Cat.class);
+		builder.and().eq(property, value);
+		return builder.get();
+	}
+
+	private static String firstEq(Criteria criteria) {
+		for (String dep : QueryDependency.of(Cat.class, criteria, null, false)) {
+			if (dep.startsWith(PREFIX + "eq."))
+				return dep;
+		}
+		return null;
+	}
+
+	public static class Cat {
+		@X.Key
+		private long id;
+		private String name;
+		private Integer age;
+		private Boolean flag;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getAge() {
+			return age;
+		}
+
+		public void setAge(Integer age) {
+			this.age = age;
+		}
+
+		public Boolean getFlag() {
+			return flag;
+		}
+
+		public void setFlag(Boolean flag) {
+			this.flag = flag;
+		}
+	}
+}
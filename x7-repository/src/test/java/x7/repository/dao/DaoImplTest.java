@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package x7.repository.dao;
+
+import org.junit.Test;
+import x7.core.bean.Parser;
+import x7.core.repository.X;
+import x7.repository.mapper.StatementBinder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DaoImplTest {
+
+    @Test
+    public void multiRowSql() {
+        String sql = "INSERT INTO t (a, b) VALUES (?,?)";
+        assertEquals(sql, DaoImpl.multiRowSql(sql, 1));
+        assertEquals(sql, DaoImpl.multiRowSql(sql, 0));
+        assertEquals("INSERT INTO t (a, b) VALUES (?,?),(?,?),(?,?)", DaoImpl.multiRowSql(sql, 3));
+    }
+
+    /**
+     * id按8字节, name按每字符3字节加引号: 一行"aaa"估算19字节
+     */
+    @Test
+    public void nextGroupIsBoundedByRowsAndBytes() {
+        StatementBinder binder = StatementBinder.get(Cat.class, Parser.get(Cat.class).getBeanElementList());
+        List<Cat> chunk = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            chunk.add(new Cat("aaa"));
+        }
+        chunk.add(new Cat("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+        chunk.add(new Cat("aaa"));
+
+        DaoImpl dao = DaoImpl.getInstance();
+        dao.setMaxStatementBytes(1024 * 1024);
+        assertEquals(3, dao.nextGroup(binder, chunk, 0, 3));
+        assertEquals(7, dao.nextGroup(binder, chunk, 3, 100));
+
+        dao.setMaxStatementBytes(50);
+        try {
+            assertEquals(2, dao.nextGroup(binder, chunk, 0, 100));
+            assertEquals(4, dao.nextGroup(binder, chunk, 2, 100));
+            assertEquals(5, dao.nextGroup(binder, chunk, 4, 100));
+            assertEquals(6, dao.nextGroup(binder, chunk, 5, 100));
+            assertEquals(7, dao.nextGroup(binder, chunk, 6, 100));
+        } finally {
+            dao.setMaxStatementBytes(1024 * 1024);
+        }
+    }
+
+    public static class Cat {
+        @X.Key
+        private long id;
+        private String name;
+
+        public Cat() {
+        }
+
+        public Cat(String name) {
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}